@@ -0,0 +1,69 @@
+package com.reactivespring.config;
+
+import com.reactivespring.repository.MovieInfoRepository;
+import com.reactivespring.util.MovieInfoSearchIndex;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+
+// Carga todos los MovieInfo en el índice de búsqueda una vez arrancada la aplicación y lo vuelve a construir cada cierto
+// tiempo. Entre medias, el servicio mantiene el índice actualizado con cada escritura. La reconstrucción periódica
+// recoge los cambios que se hayan hecho desde otras instancias del servicio o directamente en MongoDB.
+
+@Slf4j
+@RequiredArgsConstructor
+@Component
+public class SearchIndexInitializer {
+    private final MovieInfoRepository movieInfoRepository;
+    private final MovieInfoSearchIndex movieInfoSearchIndex;
+
+    @Value("${movieInfo.search.refreshInterval:5m}")
+    private Duration refreshInterval;
+
+    private Disposable refresh;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadIndex() {
+        refresh = Flux.interval(Duration.ZERO, refreshInterval)
+                // Si una reconstrucción tarda más que el intervalo, nos saltamos las siguientes.
+                .onBackpressureDrop()
+                .concatMap(tick -> rebuildIndex(), 1)
+                .subscribe();
+    }
+
+    // Los cambios que se hagan en el índice desde que empieza la lectura de los MovieInfo se vuelven a aplicar sobre el
+    // índice nuevo, así que no se pierden al reemplazar el índice.
+    public Mono<Void> rebuildIndex() {
+        return Mono.defer(() -> {
+            var rebuild = movieInfoSearchIndex.startRebuild();
+
+            return movieInfoRepository.findAll()
+                    .collectList()
+                    // Versión simplificada de la expresión "movieInfos -> rebuild.complete(movieInfos)"
+                    .doOnNext(rebuild::complete)
+                    .doOnNext(movieInfos -> log.info("Search index rebuilt with {} MovieInfos", movieInfos.size()))
+                    // Si la reconstrucción falla o se cancela, dejamos de registrar los cambios.
+                    .doFinally(signalType -> rebuild.cancel());
+        })
+                .onErrorResume(ex -> {
+                    log.error("Exception caught while rebuilding the search index: {}", ex.getMessage(), ex);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    @PreDestroy
+    public void stopRefresh() {
+        if(refresh != null)
+            refresh.dispose();
+    }
+}
@@ -1,6 +1,11 @@
 package com.reactivespring.controller;
 
+import com.reactivespring.exception.MovieInfoDataException;
+import com.reactivespring.util.DuplicateKeyUtil;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.ObjectError;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -27,4 +32,29 @@ public class GlobalErrorHandlerController {
 
         return ResponseEntity.badRequest().body(errorMessages);
     }
+
+    @ExceptionHandler(MovieInfoDataException.class)
+    public ResponseEntity<String> handleMovieInfoDataException(MovieInfoDataException ex) {
+        log.error("Exception Caught in handleMovieInfoDataException is: {}", ex.getMessage(), ex);
+
+        return ResponseEntity.badRequest().body(ex.getMessage());
+    }
+
+    // El id y el nombre de cada MovieInfo son únicos(ver el índice del campo "name"). La respuesta indica cuál de los
+    // dos ya existe.
+    @ExceptionHandler(DuplicateKeyException.class)
+    public ResponseEntity<String> handleDuplicateKeyException(DuplicateKeyException ex) {
+        log.error("Exception Caught in handleDuplicateKeyException is: {}", ex.getMessage(), ex);
+
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(DuplicateKeyUtil.getConflictMessage(ex.getMessage()));
+    }
+
+    // La versión del MovieInfo no coincide con la cabecera "If-Match" de la petición.
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<String> handleOptimisticLockingFailureException(OptimisticLockingFailureException ex) {
+        log.error("Exception Caught in handleOptimisticLockingFailureException is: {}", ex.getMessage(), ex);
+
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED)
+                .body("The MovieInfo has been modified by another request");
+    }
 }
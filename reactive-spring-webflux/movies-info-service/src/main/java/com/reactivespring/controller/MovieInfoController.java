@@ -1,38 +1,128 @@
 package com.reactivespring.controller;
 
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoBatchResult;
+import com.reactivespring.domain.MovieInfoLookup;
+import com.reactivespring.domain.MovieInfoLookupRequest;
+import com.reactivespring.exception.MovieInfoDataException;
 import com.reactivespring.service.MovieInfoService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 @Slf4j
 @RequiredArgsConstructor
 @RestController
 @RequestMapping("v1/movieinfos")
 public class MovieInfoController {
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final MovieInfoService movieInfoService;
 
+    // Tamaño de página por defecto y tamaño máximo que puede pedir un cliente.
+    @Value("${movieInfo.pagination.defaultLimit:100}")
+    private int defaultLimit;
+
+    @Value("${movieInfo.pagination.maxLimit:500}")
+    private int maxLimit;
+
+    // Número máximo de documentos que se piden a MongoDB cada vez en el listado en streaming.
+    @Value("${movieInfo.stream.limitRate:256}")
+    private int streamLimitRate;
+
+    // Número de resultados por defecto de la búsqueda.
+    @Value("${movieInfo.search.defaultLimit:20}")
+    private int searchDefaultLimit;
+
+    // El listado se devuelve por páginas(Por ejemplo: "/v1/movieinfos?limit=50"). Si existe una página siguiente, la
+    // cabecera "X-Next-Cursor" contiene el cursor que hay que enviar para pedirla
+    // (Por ejemplo: "/v1/movieinfos?limit=50&cursor=YWJj").
+    // Los listados pueden devolver solo algunos campos de cada MovieInfo(Por ejemplo: "/v1/movieinfos?fields=name,year").
     @GetMapping
-    public Flux<MovieInfo> getAllMovieInfos(@RequestParam(required = false) Integer year) {
+    public Mono<ResponseEntity<List<MovieInfo>>> getAllMovieInfos(
+            @RequestParam(required = false) Integer year,
+            @RequestParam(name = "id", required = false) List<String> ids,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) List<String> fields) {
         log.info("Year is: {}", year);
 
-        if(year != null)
-            return movieInfoService.getAllMovieInfosByYear(year).log();
+        // Permite recuperar varios MovieInfo en una única petición(Por ejemplo: "/v1/movieinfos?id=1&id=2").
+        if(ids != null)
+            return movieInfoService.getMovieInfosByIds(ids, fields).log()
+                    .collectList()
+                    // Versión simplificada de la expresión "movieInfos -> ResponseEntity.ok(movieInfos)"
+                    .map(ResponseEntity::ok);
+
+        if(limit != null && limit < 1)
+            return Mono.error(new MovieInfoDataException("The limit must be a positive value"));
+
+        var pageSize = limit == null ? defaultLimit : Math.min(limit, maxLimit);
+
+        return movieInfoService.getMovieInfosPage(year, cursor, pageSize, fields)
+                .map(movieInfoPage -> {
+                    var responseBuilder = ResponseEntity.ok();
 
-        return movieInfoService.getAllMovieInfos().log();
+                    if(movieInfoPage.getNextCursor() != null)
+                        responseBuilder.header(NEXT_CURSOR_HEADER, movieInfoPage.getNextCursor());
+
+                    return responseBuilder.body(movieInfoPage.getMovieInfos());
+                })
+                .log();
     }
 
+    // Variante en streaming del listado para los clientes que aceptan "application/x-ndjson". Devuelve todos los
+    // documentos sin paginar, un documento JSON por línea, a medida que los va devolviendo el cursor de MongoDB.
+    // El método "limitRate" pide los documentos por lotes, así que si el cliente lee despacio, se dejan de pedir
+    // documentos a MongoDB en lugar de acumularlos en memoria.
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<MovieInfo> streamAllMovieInfos(@RequestParam(required = false) Integer year,
+                                               @RequestParam(required = false) List<String> fields) {
+        return movieInfoService.getAllMovieInfos(year, fields).limitRate(streamLimitRate);
+    }
+
+    // Búsqueda por las palabras del nombre y del reparto, ordenada por relevancia(Por ejemplo:
+    // "/v1/movieinfos/search?q=dark kni"). La última palabra puede estar incompleta para poder autocompletar.
+    @GetMapping("/search")
+    public Flux<MovieInfo> searchMovieInfos(@RequestParam(name = "q", required = false) String query,
+                                            @RequestParam(required = false) Integer limit) {
+        if(query == null || query.isBlank())
+            return Flux.error(new MovieInfoDataException("The search query must be present"));
+
+        if(limit != null && limit < 1)
+            return Flux.error(new MovieInfoDataException("The limit must be a positive value"));
+
+        return movieInfoService.searchMovieInfos(query, limit == null ? searchDefaultLimit : Math.min(limit, maxLimit));
+    }
+
+    // Recupera varios MovieInfo en una única petición y devuelve también los ids que no existen(Por ejemplo:
+    // {"ids": ["1", "2"], "fields": ["name"]}). Se usa POST para no tener el límite de tamaño de la URL.
+    @PostMapping("/lookup")
+    public Mono<MovieInfoLookup> lookupMovieInfos(@RequestBody @Validated MovieInfoLookupRequest lookupRequest) {
+        if(lookupRequest.getIds().size() > maxLimit)
+            return Mono.error(new MovieInfoDataException("The number of ids must not be greater than " + maxLimit));
+
+        return movieInfoService.lookupMovieInfos(lookupRequest.getIds(), lookupRequest.getFields()).log();
+    }
+
+    // La respuesta incluye la versión del MovieInfo como "ETag". Si la petición incluye la cabecera "If-None-Match" con
+    // ese mismo "ETag", Spring responde "304 Not Modified" sin cuerpo y nos ahorramos serializar el MovieInfo.
     @GetMapping("{id}")
     public Mono<ResponseEntity<MovieInfo>> getMovieInfoById(@PathVariable String id) {
         return movieInfoService.getMovieInfoById(id)
-                // Versión simplificada de la expresión "movieInfo -> ResponseEntity.ok(movieInfo)"
-                .map(ResponseEntity::ok)
+                // Versión simplificada de la expresión "movieInfo -> okWithETag(movieInfo)"
+                .map(MovieInfoController::okWithETag)
                 // Una manera
                 //.defaultIfEmpty(ResponseEntity.notFound().build())
                 // Otra manera
@@ -46,11 +136,22 @@ public class MovieInfoController {
         return movieInfoService.addMovieInfo(movieInfo).log();
     }
 
+    // Carga masiva de MovieInfo. Acepta un array JSON o un MovieInfo por línea("application/x-ndjson") y devuelve el
+    // resultado de cada uno de ellos en el mismo orden. Los MovieInfo que no son válidos no impiden insertar el resto,
+    // por eso la respuesta siempre tiene el código 200.
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<MovieInfoBatchResult> addMovieInfos(@RequestBody Flux<MovieInfo> movieInfos) {
+        return movieInfoService.addMovieInfos(movieInfos);
+    }
+
+    // Si la petición incluye la cabecera "If-Match" con el "ETag" que devolvió el GET, el MovieInfo solo se modifica si
+    // nadie lo ha modificado desde entonces. En caso contrario se devuelve el código 412.
     @PutMapping("{id}")
-    public Mono<ResponseEntity<MovieInfo>> updateMovieInfo(@PathVariable String id, @RequestBody MovieInfo movieInfo) {
-        return movieInfoService.updateMovieInfo(id, movieInfo)
-                // Versión simplificada de la expresión "updateMovieInfo -> ResponseEntity.ok(updateMovieInfo)"
-                .map(ResponseEntity::ok)
+    public Mono<ResponseEntity<MovieInfo>> updateMovieInfo(@PathVariable String id, @RequestBody MovieInfo movieInfo,
+            @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return movieInfoService.updateMovieInfo(id, movieInfo, parseIfMatch(ifMatch))
+                // Versión simplificada de la expresión "updateMovieInfo -> okWithETag(updateMovieInfo)"
+                .map(MovieInfoController::okWithETag)
                 // Una manera
                 //.defaultIfEmpty(ResponseEntity.notFound().build())
                 // Otra manera
@@ -58,9 +159,49 @@ public class MovieInfoController {
                 .log();
     }
 
+    // Actualización parcial: solo se modifican los campos que se envían en la petición
+    // (Por ejemplo: {"year": 2006}).
+    @PatchMapping("{id}")
+    public Mono<ResponseEntity<MovieInfo>> patchMovieInfo(@PathVariable String id, @RequestBody MovieInfo movieInfo,
+            @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return movieInfoService.patchMovieInfo(id, movieInfo, parseIfMatch(ifMatch))
+                // Versión simplificada de la expresión "patchedMovieInfo -> okWithETag(patchedMovieInfo)"
+                .map(MovieInfoController::okWithETag)
+                .switchIfEmpty(Mono.just(ResponseEntity.notFound().build()))
+                .log();
+    }
+
     @ResponseStatus(HttpStatus.NO_CONTENT)
     @DeleteMapping("{id}")
     public Mono<Void> deleteMovieInfoById(@PathVariable String id) {
         return movieInfoService.deleteMovieInfoById(id);
     }
+
+    // El "ETag" de un MovieInfo es su versión. Los MovieInfo guardados antes de añadir la versión no tienen "ETag".
+    private static ResponseEntity<MovieInfo> okWithETag(MovieInfo movieInfo) {
+        var responseBuilder = ResponseEntity.ok();
+
+        if(movieInfo.getVersion() != null)
+            responseBuilder.eTag(String.valueOf(movieInfo.getVersion()));
+
+        return responseBuilder.body(movieInfo);
+    }
+
+    // Devuelve la versión que indica la cabecera "If-Match"(Por ejemplo: "3"), o null si no hay que comprobarla
+    // (sin cabecera o con el valor "*"). Un "ETag" que no es una versión nunca puede coincidir.
+    private static Long parseIfMatch(String ifMatch) {
+        if(ifMatch == null || ifMatch.trim().equals("*"))
+            return null;
+
+        var eTag = ifMatch.trim();
+
+        if(eTag.startsWith("W/"))
+            eTag = eTag.substring(2);
+
+        try {
+            return Long.valueOf(eTag.replace("\"", ""));
+        } catch(NumberFormatException ex) {
+            throw new OptimisticLockingFailureException("The If-Match header is not a valid version: " + ifMatch);
+        }
+    }
 }
@@ -2,7 +2,11 @@ package com.reactivespring.domain;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import javax.validation.constraints.NotBlank;
@@ -12,14 +16,18 @@ import java.time.LocalDate;
 import java.util.List;
 
 @Data
+@NoArgsConstructor
 @AllArgsConstructor
 @Document("movie_infos")
+// Índice para las búsquedas por año. Incluye el id para poder paginar por año sin ordenar en memoria.
+@CompoundIndex(name = "year_id", def = "{'year': 1, '_id': 1}")
 public class MovieInfo {
 
     @Id
     private String movieInfoId;
 
     @NotBlank(message = "movieInfo.name must be present")
+    @Indexed(name = "name", unique = true)
     private String name;
 
     @NotNull(message = "movieInfo.year must be present")
@@ -29,4 +37,13 @@ public class MovieInfo {
     private List<@NotBlank(message = "movieInfo.cast must be present") String> cast;
 
     private LocalDate releaseDate;
+
+    // Versión del documento para el control de concurrencia optimista. Spring Data la incrementa en cada escritura y se
+    // devuelve a los clientes en la cabecera "ETag".
+    @Version
+    private Long version;
+
+    public MovieInfo(String movieInfoId, String name, Integer year, List<String> cast, LocalDate releaseDate) {
+        this(movieInfoId, name, year, cast, releaseDate, null);
+    }
 }
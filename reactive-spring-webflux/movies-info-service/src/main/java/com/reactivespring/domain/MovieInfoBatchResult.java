@@ -0,0 +1,24 @@
+package com.reactivespring.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Resultado de cada uno de los MovieInfo recibidos en una carga masiva. El campo "index" es la posición del MovieInfo
+// en la petición.
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MovieInfoBatchResult {
+    private long index;
+    private Status status;
+    private String movieInfoId;
+    private String message;
+
+    public enum Status {
+        CREATED, INVALID, DUPLICATE, FAILED
+    }
+}
@@ -0,0 +1,18 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Resultado de la búsqueda de varios MovieInfo por sus ids: los MovieInfo encontrados(en el orden de los ids pedidos) y
+// los ids que no existen.
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieInfoLookup {
+    private List<MovieInfo> movieInfos;
+    private List<String> missingIds;
+}
@@ -0,0 +1,20 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.NotEmpty;
+import java.util.List;
+
+// Cuerpo de la petición "POST /v1/movieinfos/lookup". Los campos son opcionales(ver el parámetro "fields" del listado).
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieInfoLookupRequest {
+    @NotEmpty(message = "movieInfoLookup.ids must be present")
+    private List<String> ids;
+
+    private List<String> fields;
+}
@@ -0,0 +1,15 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+// Página de MovieInfo. El cursor "nextCursor" permite pedir la página siguiente y es null en la última página.
+
+@Data
+@AllArgsConstructor
+public class MovieInfoPage {
+    private List<MovieInfo> movieInfos;
+    private String nextCursor;
+}
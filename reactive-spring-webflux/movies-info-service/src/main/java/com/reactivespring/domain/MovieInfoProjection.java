@@ -0,0 +1,15 @@
+package com.reactivespring.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// MovieInfo leído solo con los campos pedidos con el parámetro "fields". Los campos que no se han pedido no se incluyen
+// en la respuesta. El resto de respuestas siguen incluyendo los campos sin valor(null).
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MovieInfoProjection extends MovieInfo {
+
+    public MovieInfoProjection(MovieInfo movieInfo) {
+        super(movieInfo.getMovieInfoId(), movieInfo.getName(), movieInfo.getYear(), movieInfo.getCast(),
+                movieInfo.getReleaseDate(), movieInfo.getVersion());
+    }
+}
@@ -0,0 +1,8 @@
+package com.reactivespring.exception;
+
+public class MovieInfoDataException extends RuntimeException {
+
+    public MovieInfoDataException(String message) {
+        super(message);
+    }
+}
@@ -5,7 +5,7 @@ import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-public interface MovieInfoRepository extends ReactiveMongoRepository<MovieInfo, String> {
+public interface MovieInfoRepository extends ReactiveMongoRepository<MovieInfo, String>, MovieInfoRepositoryCustom {
     Flux<MovieInfo> findByYear(Integer year);
     Mono<MovieInfo> findByName(String name);
 }
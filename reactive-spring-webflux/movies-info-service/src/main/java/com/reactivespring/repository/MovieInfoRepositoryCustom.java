@@ -0,0 +1,30 @@
+package com.reactivespring.repository;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.reactivespring.domain.MovieInfo;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+// Consultas que no se pueden expresar con los métodos derivados de Spring Data y que se implementan directamente con
+// "ReactiveMongoTemplate" en la clase "MovieInfoRepositoryCustomImpl".
+
+public interface MovieInfoRepositoryCustom {
+    // En los siguientes métodos, "fields" son los campos que se leen de MongoDB. Si es null, se leen todos los campos.
+    Flux<MovieInfo> findPage(Integer year, String lastMovieInfoId, int limit, Collection<String> fields);
+
+    // Recupera los MovieInfo del año indicado(o todos si es null) o, si se indican ids, solo los de esos ids.
+    Flux<MovieInfo> findAll(Integer year, Collection<String> ids, Collection<String> fields);
+
+    // Inserta todos los MovieInfo en una única operación y devuelve los errores de los que no se han podido insertar,
+    // indexados por su posición en la lista. A los que sí se han insertado se les asigna su id.
+    Mono<Map<Integer, BulkWriteError>> insertAllUnordered(List<MovieInfo> movieInfos);
+
+    // Asigna los valores de los campos indicados(nombre del campo -> valor), incrementa la versión y devuelve el
+    // MovieInfo actualizado. Si se indica la versión esperada, solo se modifica el MovieInfo si tiene esa versión. Si no
+    // se modifica ningún MovieInfo, el flujo termina sin emitir ningún valor.
+    Mono<MovieInfo> updateFields(String movieInfoId, Long expectedVersion, Map<String, Object> fields);
+}
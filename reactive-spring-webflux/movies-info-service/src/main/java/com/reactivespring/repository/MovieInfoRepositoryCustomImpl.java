@@ -0,0 +1,138 @@
+package com.reactivespring.repository;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+import com.reactivespring.domain.MovieInfo;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@RequiredArgsConstructor
+public class MovieInfoRepositoryCustomImpl implements MovieInfoRepositoryCustom {
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    // Paginación por clave("keyset"): en lugar de saltar los documentos de las páginas anteriores, se buscan los
+    // documentos cuyo id es mayor que el último id devuelto. Con el índice de "_id"(o el índice compuesto de "year" y
+    // "_id" si se filtra por año) el coste de cada página es el mismo sin importar lo lejos que esté.
+    @Override
+    public Flux<MovieInfo> findPage(Integer year, String lastMovieInfoId, int limit, Collection<String> fields) {
+        return reactiveMongoTemplate.find(getPageQuery(year, lastMovieInfoId, limit, fields), MovieInfo.class);
+    }
+
+    @Override
+    public Flux<MovieInfo> findAll(Integer year, Collection<String> ids, Collection<String> fields) {
+        return reactiveMongoTemplate.find(getAllQuery(year, ids, fields), MovieInfo.class);
+    }
+
+    // Las consultas se construyen aparte para poder comprobar su plan de ejecución en los tests.
+    static Query getPageQuery(Integer year, String lastMovieInfoId, int limit, Collection<String> fields) {
+        var query = new Query();
+        includeFields(query, fields);
+
+        if(year != null)
+            query.addCriteria(Criteria.where("year").is(year));
+
+        if(lastMovieInfoId != null)
+            query.addCriteria(afterMovieInfoId(lastMovieInfoId));
+
+        return query.with(Sort.by(Sort.Direction.ASC, "movieInfoId")).limit(limit);
+    }
+
+    static Query getAllQuery(Integer year, Collection<String> ids, Collection<String> fields) {
+        var query = new Query();
+        includeFields(query, fields);
+
+        if(year != null)
+            query.addCriteria(Criteria.where("year").is(year));
+
+        if(ids != null)
+            query.addCriteria(Criteria.where("movieInfoId").in(ids));
+
+        return query;
+    }
+
+    // Proyección de MongoDB: el servidor solo devuelve los campos indicados, así que el resto de campos no se leen, no
+    // se transfieren y no se decodifican.
+    private static void includeFields(Query query, Collection<String> fields) {
+        if(fields != null)
+            fields.forEach(field -> query.fields().include(field));
+    }
+
+    // Los ids generados por MongoDB se guardan como ObjectId y el resto como String. MongoDB ordena primero los String
+    // y después los ObjectId, pero el operador "$gt" solo compara valores del mismo tipo. Por eso, después de un id de
+    // tipo String también hay que incluir todos los ObjectId.
+    private static Criteria afterMovieInfoId(String lastMovieInfoId) {
+        if(ObjectId.isValid(lastMovieInfoId))
+            return Criteria.where("movieInfoId").gt(new ObjectId(lastMovieInfoId));
+
+        return new Criteria().orOperator(Criteria.where("movieInfoId").gt(lastMovieInfoId),
+                Criteria.where("movieInfoId").type(JsonSchemaObject.Type.objectIdType()));
+    }
+
+    // Usamos directamente el método "insertMany" del driver con la opción "ordered(false)": MongoDB inserta todos los
+    // documentos en una única petición y, si alguno falla(por ejemplo, por un nombre duplicado), sigue insertando el
+    // resto en lugar de detenerse en el primer error.
+    @Override
+    public Mono<Map<Integer, BulkWriteError>> insertAllUnordered(List<MovieInfo> movieInfos) {
+        var documents = movieInfos.stream()
+                .map(movieInfo -> {
+                    // Misma versión inicial que asigna el método "save" de Spring Data.
+                    movieInfo.setVersion(0L);
+
+                    var document = new Document();
+                    reactiveMongoTemplate.getConverter().write(movieInfo, document);
+
+                    return document;
+                })
+                .collect(Collectors.toList());
+
+        return reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(MovieInfo.class))
+                .flatMap(collection -> Mono.from(collection.insertMany(documents, new InsertManyOptions().ordered(false))))
+                .map(insertManyResult -> Map.<Integer, BulkWriteError>of())
+                .onErrorResume(MongoBulkWriteException.class, ex -> Mono.just(ex.getWriteErrors().stream()
+                        // Versión simplificada de la expresión "bulkWriteError -> bulkWriteError.getIndex()"
+                        .collect(Collectors.toMap(BulkWriteError::getIndex, Function.identity()))))
+                .doOnNext(writeErrors -> {
+                    // El driver asigna el id a los documentos que no lo tienen antes de insertarlos.
+                    for(var i = 0; i < documents.size(); i++) {
+                        if(!writeErrors.containsKey(i))
+                            movieInfos.get(i).setMovieInfoId(documents.get(i).get("_id").toString());
+                    }
+                });
+    }
+
+    // Una única operación "findAndModify" con "$set": MongoDB busca y modifica el documento de forma atómica, así que no
+    // hace falta leerlo antes y ninguna otra escritura puede colarse entre la lectura y la escritura. Solo se modifican
+    // los campos indicados y la opción "returnNew" devuelve el documento ya modificado.
+    @Override
+    public Mono<MovieInfo> updateFields(String movieInfoId, Long expectedVersion, Map<String, Object> fields) {
+        var query = Query.query(Criteria.where("movieInfoId").is(movieInfoId));
+
+        // La comprobación de la versión forma parte de la misma operación atómica.
+        if(expectedVersion != null)
+            query.addCriteria(Criteria.where("version").is(expectedVersion));
+
+        var update = new Update().inc("version", 1L);
+        // Versión simplificada de la expresión "(field, value) -> update.set(field, value)"
+        fields.forEach(update::set);
+
+        return reactiveMongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true),
+                MovieInfo.class);
+    }
+}
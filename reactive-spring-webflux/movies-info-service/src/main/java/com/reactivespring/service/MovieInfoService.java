@@ -1,14 +1,24 @@
 package com.reactivespring.service;
 
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoBatchResult;
+import com.reactivespring.domain.MovieInfoLookup;
+import com.reactivespring.domain.MovieInfoPage;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 public interface MovieInfoService {
-    Flux<MovieInfo> getAllMovieInfos();
-    Flux<MovieInfo> getAllMovieInfosByYear(Integer year);
+    Flux<MovieInfo> getAllMovieInfos(Integer year, List<String> fields);
+    Mono<MovieInfoPage> getMovieInfosPage(Integer year, String cursor, int limit, List<String> fields);
     Mono<MovieInfo> getMovieInfoById(String id);
+    Flux<MovieInfo> getMovieInfosByIds(List<String> ids, List<String> fields);
+    Mono<MovieInfoLookup> lookupMovieInfos(List<String> ids, List<String> fields);
+    Flux<MovieInfo> searchMovieInfos(String query, int limit);
     Mono<MovieInfo> addMovieInfo(MovieInfo movieInfo);
-    Mono<MovieInfo> updateMovieInfo(String id, MovieInfo movieInfo);
+    Flux<MovieInfoBatchResult> addMovieInfos(Flux<MovieInfo> movieInfos);
+    Mono<MovieInfo> updateMovieInfo(String id, MovieInfo movieInfo, Long expectedVersion);
+    Mono<MovieInfo> patchMovieInfo(String id, MovieInfo movieInfo, Long expectedVersion);
     Mono<Void> deleteMovieInfoById(String id);
 }
@@ -1,25 +1,86 @@
 package com.reactivespring.service;
 
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoBatchResult;
+import com.reactivespring.domain.MovieInfoLookup;
+import com.reactivespring.domain.MovieInfoPage;
+import com.reactivespring.domain.MovieInfoProjection;
+import com.reactivespring.exception.MovieInfoDataException;
 import com.reactivespring.repository.MovieInfoRepository;
+import com.reactivespring.util.DuplicateKeyUtil;
+import com.reactivespring.util.MovieInfoSearchIndex;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+
+import java.beans.PropertyDescriptor;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @RequiredArgsConstructor
 @Service
 public class MovieInfoServiceImpl implements MovieInfoService {
+    // Código de error de MongoDB para las claves duplicadas.
+    private static final int DUPLICATE_KEY_ERROR_CODE = 11000;
+
+    // Campos que se pueden pedir con el parámetro "fields".
+    private static final Set<String> MOVIE_INFO_FIELDS = Arrays.stream(BeanUtils.getPropertyDescriptors(MovieInfo.class))
+            // Versión simplificada de la expresión "propertyDescriptor -> propertyDescriptor.getName()"
+            .map(PropertyDescriptor::getName)
+            .filter(name -> !name.equals("class"))
+            .collect(Collectors.toUnmodifiableSet());
+
     private final MovieInfoRepository movieInfoRepository;
+    private final MovieInfoSearchIndex movieInfoSearchIndex;
+    private final Validator validator;
+
+    // Número de MovieInfo que se insertan en cada operación y número de operaciones que se realizan a la vez en las
+    // cargas masivas.
+    @Value("${movieInfo.batch.chunkSize:500}")
+    private int batchChunkSize;
+
+    @Value("${movieInfo.batch.concurrency:2}")
+    private int batchConcurrency;
 
     @Override
-    public Flux<MovieInfo> getAllMovieInfos() {
-        return movieInfoRepository.findAll();
+    public Flux<MovieInfo> getAllMovieInfos(Integer year, List<String> fields) {
+        return Flux.defer(() -> toProjections(movieInfoRepository.findAll(year, null, getProjection(fields)), fields));
     }
 
+    // Pedimos un elemento más que el tamaño de la página para saber si existe una página siguiente sin tener que hacer
+    // otra consulta.
     @Override
-    public Flux<MovieInfo> getAllMovieInfosByYear(Integer year) {
-        return movieInfoRepository.findByYear(year);
+    public Mono<MovieInfoPage> getMovieInfosPage(Integer year, String cursor, int limit, List<String> fields) {
+        // Versión simplificada de la expresión "value -> decodeCursor(value)"
+        return Mono.fromCallable(() -> Optional.ofNullable(cursor).map(MovieInfoServiceImpl::decodeCursor))
+                .flatMap(lastMovieInfoId -> toProjections(movieInfoRepository.findPage(year,
+                                lastMovieInfoId.orElse(null), limit + 1, getProjection(fields)), fields)
+                        .collectList())
+                .map(movieInfos -> {
+                    if(movieInfos.size() <= limit)
+                        return new MovieInfoPage(movieInfos, null);
+
+                    var page = new ArrayList<>(movieInfos.subList(0, limit));
+
+                    return new MovieInfoPage(page, encodeCursor(page.get(limit - 1).getMovieInfoId()));
+                });
     }
 
     @Override
@@ -28,25 +89,233 @@ public class MovieInfoServiceImpl implements MovieInfoService {
     }
 
     @Override
-    public Mono<MovieInfo> addMovieInfo(MovieInfo movieInfo) {
-        return movieInfoRepository.save(movieInfo);
+    public Flux<MovieInfo> getMovieInfosByIds(List<String> ids, List<String> fields) {
+        if(fields == null)
+            return movieInfoRepository.findAllById(ids);
+
+        return Flux.defer(() -> toProjections(movieInfoRepository.findAll(null, ids, getProjection(fields)), fields));
     }
 
+    // Recupera todos los MovieInfo con una única consulta a MongoDB y devuelve también los ids que no existen, así el
+    // cliente no necesita una petición por cada id para saber cuáles faltan. Los ids repetidos se consultan una vez.
     @Override
-    public Mono<MovieInfo> updateMovieInfo(String id, MovieInfo movieInfo) {
-        return getMovieInfoById(id)
-                .flatMap(existingMovieInfo -> {
-                    existingMovieInfo.setCast(movieInfo.getCast());
-                    existingMovieInfo.setYear(movieInfo.getYear());
-                    existingMovieInfo.setName(movieInfo.getName());
-                    existingMovieInfo.setReleaseDate(movieInfo.getReleaseDate());
+    public Mono<MovieInfoLookup> lookupMovieInfos(List<String> ids, List<String> fields) {
+        var uniqueIds = new ArrayList<>(new LinkedHashSet<>(ids));
+
+        return getMovieInfosByIds(uniqueIds, fields)
+                // Versión simplificada de la expresión "movieInfo -> movieInfo.getMovieInfoId()"
+                .collectMap(MovieInfo::getMovieInfoId)
+                .map(movieInfosById -> {
+                    var movieInfos = new ArrayList<MovieInfo>(movieInfosById.size());
+                    var missingIds = new ArrayList<String>();
+
+                    // Los MovieInfo se devuelven en el mismo orden que los ids pedidos.
+                    uniqueIds.forEach(id -> {
+                        var movieInfo = movieInfosById.get(id);
 
-                    return addMovieInfo(existingMovieInfo);
+                        if(movieInfo == null)
+                            missingIds.add(id);
+                        else
+                            movieInfos.add(movieInfo);
+                    });
+
+                    return new MovieInfoLookup(movieInfos, missingIds);
                 });
     }
 
+    // La búsqueda se resuelve en memoria con el índice de búsqueda, sin consultar MongoDB.
+    @Override
+    public Flux<MovieInfo> searchMovieInfos(String query, int limit) {
+        return Flux.defer(() -> Flux.fromIterable(movieInfoSearchIndex.search(query, limit)));
+    }
+
+    @Override
+    public Mono<MovieInfo> addMovieInfo(MovieInfo movieInfo) {
+        // Sin versión, Spring Data siempre inserta el documento en lugar de intentar actualizarlo.
+        movieInfo.setVersion(null);
+
+        return movieInfoRepository.save(movieInfo)
+                // Versión simplificada de la expresión "savedMovieInfo -> movieInfoSearchIndex.index(savedMovieInfo)"
+                .doOnNext(movieInfoSearchIndex::index);
+    }
+
+    // Los MovieInfo se leen de la petición a medida que llegan y se agrupan en bloques. Cada bloque se valida y se
+    // inserta en una única operación. El método "flatMapSequential" mantiene el orden de los resultados y limita los
+    // bloques que se procesan a la vez, así que nunca tenemos en memoria toda la petición.
+    @Override
+    public Flux<MovieInfoBatchResult> addMovieInfos(Flux<MovieInfo> movieInfos) {
+        return movieInfos.index()
+                .buffer(batchChunkSize)
+                .flatMapSequential(this::addMovieInfosChunk, batchConcurrency);
+    }
+
+    private Flux<MovieInfoBatchResult> addMovieInfosChunk(List<Tuple2<Long, MovieInfo>> chunk) {
+        var results = new MovieInfoBatchResult[chunk.size()];
+        var validMovieInfos = new ArrayList<MovieInfo>();
+        var validPositions = new ArrayList<Integer>();
+
+        for(var i = 0; i < chunk.size(); i++) {
+            var violations = validator.validate(chunk.get(i).getT2());
+
+            if(violations.isEmpty()) {
+                validMovieInfos.add(chunk.get(i).getT2());
+                validPositions.add(i);
+            } else {
+                var errorMessages = violations.stream()
+                        // Versión simplificada de la expresión "violation -> violation.getMessage()"
+                        .map(ConstraintViolation::getMessage)
+                        .sorted()
+                        .collect(Collectors.joining(","));
+
+                results[i] = new MovieInfoBatchResult(chunk.get(i).getT1(), MovieInfoBatchResult.Status.INVALID,
+                        null, errorMessages);
+            }
+        }
+
+        if(validMovieInfos.isEmpty())
+            return Flux.fromArray(results);
+
+        return movieInfoRepository.insertAllUnordered(validMovieInfos)
+                .doOnNext(writeErrors -> {
+                    for(var i = 0; i < validPositions.size(); i++) {
+                        var position = validPositions.get(i);
+                        var index = chunk.get(position).getT1();
+                        var writeError = writeErrors.get(i);
+
+                        if(writeError == null) {
+                            movieInfoSearchIndex.index(validMovieInfos.get(i));
+                            results[position] = new MovieInfoBatchResult(index, MovieInfoBatchResult.Status.CREATED,
+                                    validMovieInfos.get(i).getMovieInfoId(), null);
+                        }
+                        else if(writeError.getCode() == DUPLICATE_KEY_ERROR_CODE)
+                            results[position] = new MovieInfoBatchResult(index, MovieInfoBatchResult.Status.DUPLICATE,
+                                    null, DuplicateKeyUtil.getConflictMessage(writeError.getMessage()));
+                        else
+                            results[position] = new MovieInfoBatchResult(index, MovieInfoBatchResult.Status.FAILED,
+                                    null, writeError.getMessage());
+                    }
+                })
+                // Si falla la operación completa, todos los MovieInfo válidos del bloque se marcan como fallidos.
+                .onErrorResume(ex -> {
+                    validPositions.forEach(position -> results[position] = new MovieInfoBatchResult(
+                            chunk.get(position).getT1(), MovieInfoBatchResult.Status.FAILED, null, ex.getMessage()));
+
+                    return Mono.empty();
+                })
+                .thenMany(Flux.defer(() -> Flux.fromArray(results)));
+    }
+
+    // Se reemplazan todos los campos(salvo el id) en una única operación, sin leer antes el MovieInfo.
+    @Override
+    public Mono<MovieInfo> updateMovieInfo(String id, MovieInfo movieInfo, Long expectedVersion) {
+        // "Map.of" no admite valores nulos.
+        var fields = new LinkedHashMap<String, Object>();
+        fields.put("name", movieInfo.getName());
+        fields.put("year", movieInfo.getYear());
+        fields.put("cast", movieInfo.getCast());
+        fields.put("releaseDate", movieInfo.getReleaseDate());
+
+        return updateFields(id, expectedVersion, fields);
+    }
+
+    // Solo se modifican los campos que tienen valor. Como el resto de campos no se envían, las validaciones se aplican
+    // únicamente a los campos que se van a modificar.
+    @Override
+    public Mono<MovieInfo> patchMovieInfo(String id, MovieInfo movieInfo, Long expectedVersion) {
+        var fields = new LinkedHashMap<String, Object>();
+
+        if(movieInfo.getName() != null)
+            fields.put("name", movieInfo.getName());
+
+        if(movieInfo.getYear() != null)
+            fields.put("year", movieInfo.getYear());
+
+        if(movieInfo.getCast() != null)
+            fields.put("cast", movieInfo.getCast());
+
+        if(movieInfo.getReleaseDate() != null)
+            fields.put("releaseDate", movieInfo.getReleaseDate());
+
+        if(fields.isEmpty())
+            return Mono.error(new MovieInfoDataException("At least one field must be present"));
+
+        var errorMessages = fields.entrySet().stream()
+                .flatMap(field -> validator.validateValue(MovieInfo.class, field.getKey(), field.getValue()).stream())
+                // Versión simplificada de la expresión "violation -> violation.getMessage()"
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining(","));
+
+        if(!errorMessages.isEmpty())
+            return Mono.error(new MovieInfoDataException(errorMessages));
+
+        return updateFields(id, expectedVersion, fields);
+    }
+
+    private Mono<MovieInfo> updateFields(String id, Long expectedVersion, Map<String, Object> fields) {
+        return movieInfoRepository.updateFields(id, expectedVersion, fields)
+                .doOnNext(movieInfoSearchIndex::index)
+                // Si se indica la versión y no se modifica ningún MovieInfo, hay que distinguir si no existe(el flujo
+                // termina vacío) o si tiene otra versión(error). Esta consulta extra solo se hace cuando falla.
+                .switchIfEmpty(expectedVersion == null ? Mono.empty() : movieInfoRepository.existsById(id)
+                        .filter(Boolean::booleanValue)
+                        .flatMap(exists -> Mono.error(new OptimisticLockingFailureException(
+                                "The MovieInfo " + id + " does not have the version " + expectedVersion))));
+    }
+
     @Override
     public Mono<Void> deleteMovieInfoById(String id) {
-        return movieInfoRepository.deleteById(id);
+        return movieInfoRepository.deleteById(id)
+                .doOnSuccess(result -> movieInfoSearchIndex.remove(id));
+    }
+
+    // Comprueba que los campos pedidos existen en MovieInfo. El id(necesario para el cursor de las páginas) y la
+    // versión siempre se incluyen.
+    private static Set<String> getProjection(List<String> fields) {
+        if(fields == null)
+            return null;
+
+        var invalidFields = fields.stream()
+                .filter(field -> !MOVIE_INFO_FIELDS.contains(field))
+                .sorted()
+                .collect(Collectors.joining(","));
+
+        if(!invalidFields.isEmpty())
+            throw new MovieInfoDataException("The fields are not valid: " + invalidFields);
+
+        var projection = new LinkedHashSet<>(fields);
+        projection.add("movieInfoId");
+        projection.add("version");
+
+        return projection;
+    }
+
+    // Los MovieInfo leídos solo con los campos pedidos se devuelven como "MovieInfoProjection", que no incluye en la
+    // respuesta los campos que no se han pedido.
+    private static Flux<MovieInfo> toProjections(Flux<MovieInfo> movieInfos, List<String> fields) {
+        if(fields == null)
+            return movieInfos;
+
+        // Versión simplificada de la expresión "movieInfo -> new MovieInfoProjection(movieInfo)"
+        return movieInfos.map(MovieInfoProjection::new);
+    }
+
+    // El cursor es el último id de la página codificado en Base64, para que los clientes lo traten como un valor opaco.
+    private static String encodeCursor(String lastMovieInfoId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(lastMovieInfoId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(String cursor) {
+        try {
+            var lastMovieInfoId = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+
+            if(lastMovieInfoId.isBlank())
+                throw new MovieInfoDataException("The cursor is not valid: " + cursor);
+
+            return lastMovieInfoId;
+        } catch(IllegalArgumentException ex) {
+            throw new MovieInfoDataException("The cursor is not valid: " + cursor);
+        }
     }
 }
@@ -0,0 +1,27 @@
+package com.reactivespring.util;
+
+import java.util.regex.Pattern;
+
+// Clase de utilidad para explicar los errores de clave duplicada de MongoDB(código 11000). Un MovieInfo puede chocar
+// con otro por el id(índice "_id_") o por el nombre(índice "name"). El mensaje de MongoDB indica el índice(Por ejemplo:
+// "E11000 duplicate key error collection: movieinfodb.movie_infos index: name dup key: { name: "Batman Begins" }").
+
+public class DuplicateKeyUtil {
+    private static final Pattern INDEX_PATTERN = Pattern.compile("index: (\\S+) dup key");
+
+    public static String getConflictMessage(String errorMessage) {
+        var matcher = INDEX_PATTERN.matcher(errorMessage != null ? errorMessage : "");
+
+        if(!matcher.find())
+            return "A MovieInfo with the same id or name already exists";
+
+        switch(matcher.group(1)) {
+            case "_id_":
+                return "A MovieInfo with the same id already exists";
+            case "name":
+                return "A MovieInfo with the same name already exists";
+            default:
+                return "A MovieInfo with the same id or name already exists";
+        }
+    }
+}
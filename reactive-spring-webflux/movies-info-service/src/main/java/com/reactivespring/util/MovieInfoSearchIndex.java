@@ -0,0 +1,298 @@
+package com.reactivespring.util;
+
+import com.reactivespring.domain.MovieInfo;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+// Índice invertido en memoria para buscar MovieInfo por las palabras de su nombre y de su reparto.
+// Cada término apunta a los MovieInfo que lo contienen. Los términos se guardan ordenados(TreeMap), así que todos los
+// términos que empiezan por un prefijo están seguidos y se recorren sin mirar el resto del índice(autocompletado).
+// Relevancia: un término del nombre vale más que uno del reparto, una palabra completa vale más que un prefijo y los
+// términos poco frecuentes valen más que los frecuentes(IDF). Un MovieInfo debe contener todas las palabras buscadas.
+
+@Component
+public class MovieInfoSearchIndex {
+    private static final double NAME_WEIGHT = 3.0;
+    private static final double CAST_WEIGHT = 1.0;
+    private static final double PREFIX_FACTOR = 0.5;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Término -> (id del MovieInfo -> peso del término en ese MovieInfo)
+    private TreeMap<String, Map<String, Double>> postings = new TreeMap<>();
+    // Id del MovieInfo -> MovieInfo y sus términos(para poder quitarlo del índice)
+    private Map<String, IndexedMovieInfo> movieInfos = new HashMap<>();
+    // Cambios hechos durante cada reconstrucción en curso(id del MovieInfo -> MovieInfo o null si se ha eliminado)
+    private final List<Map<String, MovieInfo>> rebuildChanges = new ArrayList<>();
+
+    // Añade el MovieInfo al índice o, si ya existe, reemplaza su versión anterior.
+    public void index(MovieInfo movieInfo) {
+        var terms = getTerms(movieInfo);
+
+        lock.writeLock().lock();
+        try {
+            removeFromPostings(postings, movieInfos, movieInfo.getMovieInfoId());
+            addToPostings(postings, movieInfos, movieInfo, terms);
+            // Versión simplificada de la expresión "changes -> changes.put(movieInfo.getMovieInfoId(), movieInfo)"
+            rebuildChanges.forEach(changes -> changes.put(movieInfo.getMovieInfoId(), movieInfo));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String movieInfoId) {
+        lock.writeLock().lock();
+        try {
+            removeFromPostings(postings, movieInfos, movieInfoId);
+            rebuildChanges.forEach(changes -> changes.put(movieInfoId, null));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Construye un índice nuevo con todos los MovieInfo y lo reemplaza de una vez. Mientras se construye, las búsquedas
+    // siguen usando el índice anterior.
+    public void rebuild(Collection<MovieInfo> allMovieInfos) {
+        startRebuild().complete(allMovieInfos);
+    }
+
+    // Empieza a registrar los cambios del índice. Hay que llamarlo antes de leer los MovieInfo con los que se
+    // reconstruye el índice, para no perder los cambios que se hagan entre la lectura y el reemplazo del índice.
+    public Rebuild startRebuild() {
+        var changes = new HashMap<String, MovieInfo>();
+
+        lock.writeLock().lock();
+        try {
+            rebuildChanges.add(changes);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        return new Rebuild(changes);
+    }
+
+    public List<MovieInfo> search(String query, int limit) {
+        var queryTerms = tokenize(query);
+
+        if(queryTerms.isEmpty())
+            return List.of();
+
+        lock.readLock().lock();
+        try {
+            Map<String, Double> scores = null;
+
+            for(var queryTerm : queryTerms) {
+                var termScores = getTermScores(queryTerm);
+
+                // Solo nos quedamos con los MovieInfo que contienen todas las palabras de la búsqueda.
+                if(scores == null)
+                    scores = termScores;
+                else {
+                    scores.keySet().retainAll(termScores.keySet());
+                    // Versión simplificada de la expresión "(movieInfoId, score) -> score + termScores.get(movieInfoId)"
+                    scores.replaceAll((movieInfoId, score) -> score + termScores.get(movieInfoId));
+                }
+
+                if(scores.isEmpty())
+                    return List.of();
+            }
+
+            return getTopResults(scores, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return movieInfos.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // En lugar de ordenar todos los resultados, mantenemos solo los "limit" mejores en un montículo cuya raíz es el peor
+    // de ellos(menor puntuación y, a igual puntuación, el último por nombre). Las búsquedas muy generales(por ejemplo,
+    // un prefijo de una letra) pueden encontrar miles de MovieInfo.
+    private List<MovieInfo> getTopResults(Map<String, Double> scores, int limit) {
+        var comparator = Comparator.comparingDouble(ScoredMovieInfo::getScore)
+                .thenComparing(scoredMovieInfo -> scoredMovieInfo.getMovieInfo().getName(),
+                        Comparator.nullsFirst(Comparator.<String>reverseOrder()));
+        var topResults = new PriorityQueue<>(limit + 1, comparator);
+
+        scores.forEach((movieInfoId, score) -> {
+            if(topResults.size() == limit && score < topResults.peek().getScore())
+                return;
+
+            topResults.add(new ScoredMovieInfo(movieInfos.get(movieInfoId).getMovieInfo(), score));
+
+            if(topResults.size() > limit)
+                topResults.poll();
+        });
+
+        var results = new ArrayList<MovieInfo>(topResults.size());
+
+        while(!topResults.isEmpty())
+            results.add(topResults.poll().getMovieInfo());
+
+        // Los resultados salen del peor al mejor.
+        Collections.reverse(results);
+
+        return results;
+    }
+
+    // Puntuación de cada MovieInfo que contiene el término buscado o un término que empieza por él. Si un MovieInfo
+    // contiene varios términos que coinciden, nos quedamos con el de mayor puntuación.
+    private Map<String, Double> getTermScores(String queryTerm) {
+        var termScores = new HashMap<String, Double>();
+        var matchingTerms = postings.subMap(queryTerm, true, queryTerm + Character.MAX_VALUE, true);
+
+        matchingTerms.forEach((term, posting) -> {
+            var factor = term.equals(queryTerm) ? 1.0 : PREFIX_FACTOR;
+            var idf = Math.log(1 + (double) movieInfos.size() / posting.size());
+
+            posting.forEach((movieInfoId, weight) -> termScores.merge(movieInfoId, weight * factor * idf, Math::max));
+        });
+
+        return termScores;
+    }
+
+    private static void removeFromPostings(TreeMap<String, Map<String, Double>> postings,
+                                           Map<String, IndexedMovieInfo> movieInfos, String movieInfoId) {
+        var indexedMovieInfo = movieInfos.remove(movieInfoId);
+
+        if(indexedMovieInfo == null)
+            return;
+
+        indexedMovieInfo.getTerms().forEach(term -> {
+            var posting = postings.get(term);
+            posting.remove(movieInfoId);
+
+            if(posting.isEmpty())
+                postings.remove(term);
+        });
+    }
+
+    private static void addToPostings(TreeMap<String, Map<String, Double>> postings,
+                                      Map<String, IndexedMovieInfo> movieInfos, MovieInfo movieInfo,
+                                      Map<String, Double> terms) {
+        movieInfos.put(movieInfo.getMovieInfoId(), new IndexedMovieInfo(movieInfo, new ArrayList<>(terms.keySet())));
+
+        terms.forEach((term, weight) -> postings.computeIfAbsent(term, key -> new HashMap<>())
+                .put(movieInfo.getMovieInfoId(), weight));
+    }
+
+    // Términos del MovieInfo con su peso. Si un término aparece en el nombre y en el reparto, se suman los pesos.
+    private static Map<String, Double> getTerms(MovieInfo movieInfo) {
+        var terms = new HashMap<String, Double>();
+
+        tokenize(movieInfo.getName()).forEach(term -> terms.merge(term, NAME_WEIGHT, Math::max));
+
+        if(movieInfo.getCast() != null) {
+            var castTerms = new HashMap<String, Double>();
+
+            movieInfo.getCast().forEach(member -> tokenize(member)
+                    .forEach(term -> castTerms.merge(term, CAST_WEIGHT, Math::max)));
+            // Versión simplificada de la expresión "(term, weight) -> terms.merge(term, weight, Double::sum)"
+            castTerms.forEach((term, weight) -> terms.merge(term, weight, Double::sum));
+        }
+
+        return terms;
+    }
+
+    // Separa el texto en palabras en minúsculas y sin tildes(Por ejemplo: "Amélie Poulain" -> ["amelie", "poulain"]).
+    static List<String> tokenize(String text) {
+        if(text == null)
+            return List.of();
+
+        var normalizedText = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase();
+
+        return Arrays.stream(SEPARATORS.split(normalizedText))
+                .filter(term -> !term.isEmpty())
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    // Reconstrucción del índice en curso. Los cambios hechos desde "startRebuild" se aplican al índice nuevo antes de
+    // reemplazar el anterior, así que un MovieInfo creado durante la reconstrucción no desaparece y uno eliminado no
+    // vuelve a aparecer.
+    @RequiredArgsConstructor
+    public class Rebuild {
+        private final Map<String, MovieInfo> changes;
+
+        public void complete(Collection<MovieInfo> allMovieInfos) {
+            var newPostings = new TreeMap<String, Map<String, Double>>();
+            var newMovieInfos = new HashMap<String, IndexedMovieInfo>();
+
+            allMovieInfos.forEach(movieInfo -> addToPostings(newPostings, newMovieInfos, movieInfo,
+                    getTerms(movieInfo)));
+
+            lock.writeLock().lock();
+            try {
+                stopRecording();
+
+                changes.forEach((movieInfoId, movieInfo) -> {
+                    removeFromPostings(newPostings, newMovieInfos, movieInfoId);
+
+                    if(movieInfo != null)
+                        addToPostings(newPostings, newMovieInfos, movieInfo, getTerms(movieInfo));
+                });
+
+                postings = newPostings;
+                movieInfos = newMovieInfos;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        // Deja de registrar los cambios sin reemplazar el índice(por ejemplo, si falla la lectura de los MovieInfo).
+        public void cancel() {
+            lock.writeLock().lock();
+            try {
+                stopRecording();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        // Cada reconstrucción tiene su propio mapa de cambios, así que lo buscamos por identidad y no con "equals".
+        private void stopRecording() {
+            rebuildChanges.removeIf(rebuildChange -> rebuildChange == changes);
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static class IndexedMovieInfo {
+        private final MovieInfo movieInfo;
+        private final List<String> terms;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static class ScoredMovieInfo {
+        private final MovieInfo movieInfo;
+        private final double score;
+    }
+}
@@ -1,18 +1,26 @@
 package com.reactivespring.controller;
 
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoBatchResult;
+import com.reactivespring.domain.MovieInfoLookupRequest;
 import com.reactivespring.repository.MovieInfoRepository;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import org.springframework.web.util.UriComponentsBuilder;
+import reactor.test.StepVerifier;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -73,6 +81,147 @@ class MovieInfoControllerIntgTest {
                 .hasSize(1);
     }
 
+    @Test
+    void getAllMovieInfosPagesTest() {
+        // given
+        var retrievedNames = new ArrayList<String>();
+        String cursor = null;
+
+        // when
+        // Recorremos todas las páginas de un elemento. Los ids generados por MongoDB(ObjectId) y el id "abc"(String)
+        // tienen tipos distintos y tienen que aparecer todos.
+        do {
+            var uri = UriComponentsBuilder.fromUriString(MOVIE_INFO_URL)
+                    .queryParam("limit", 1)
+                    .queryParamIfPresent("cursor", Optional.ofNullable(cursor))
+                    .buildAndExpand().toUri();
+
+            var result = webTestClient.get()
+                    .uri(uri.toString())
+                    .exchange()
+                    .expectStatus().is2xxSuccessful()
+                    .expectBodyList(MovieInfo.class)
+                    .hasSize(1)
+                    .returnResult();
+
+            retrievedNames.add(result.getResponseBody().get(0).getName());
+            cursor = result.getResponseHeaders().getFirst(MovieInfoController.NEXT_CURSOR_HEADER);
+        } while(cursor != null);
+
+        // then
+        assertEquals(3, retrievedNames.size());
+        assertTrue(retrievedNames.containsAll(List.of("Batman Begins", "The Dark Knight", "Dark Knight Rises")));
+    }
+
+    @Test
+    void getAllMovieInfosWithFieldsTest() {
+        // when
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL + "?year=2012&fields=name,year")
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectBodyList(MovieInfo.class)
+                .consumeWith(listEntityExchangeResult -> {
+                    var movieInfos = listEntityExchangeResult.getResponseBody();
+
+                    // El id y la versión siempre se incluyen. El resto de campos no se leen de MongoDB.
+                    assertNotNull(movieInfos);
+                    assertEquals(1, movieInfos.size());
+                    assertEquals("abc", movieInfos.get(0).getMovieInfoId());
+                    assertEquals("Dark Knight Rises", movieInfos.get(0).getName());
+                    assertEquals(2012, movieInfos.get(0).getYear());
+                    assertEquals(0L, movieInfos.get(0).getVersion());
+                    assertNull(movieInfos.get(0).getCast());
+                    assertNull(movieInfos.get(0).getReleaseDate());
+                });
+    }
+
+    @Test
+    void getMovieInfosByIdsWithFieldsTest() {
+        // when
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL + "?id=abc&fields=name")
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].name").isEqualTo("Dark Knight Rises")
+                .jsonPath("$[0].year").doesNotExist();
+    }
+
+    @Test
+    void getAllMovieInfosWithInvalidFieldsTest() {
+        // when
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL + "?fields=name,rating,budget")
+                .exchange()
+                // then
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("The fields are not valid: budget,rating");
+    }
+
+    @Test
+    void getAllMovieInfosWithInvalidCursorTest() {
+        // when
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL + "?cursor={cursor}", "!!!")
+                .exchange()
+                // then
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void streamAllMovieInfosTest() {
+        // when
+        var fluxOfMovieInfos = webTestClient.get()
+                .uri(MOVIE_INFO_URL)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                // then
+                .expectStatus().is2xxSuccessful()
+                .returnResult(MovieInfo.class)
+                .getResponseBody();
+
+        StepVerifier.create(fluxOfMovieInfos)
+                .expectNextCount(3)
+                .verifyComplete();
+    }
+
+    @Test
+    void getMovieInfosByIdsTest() {
+        // given
+        var uri = UriComponentsBuilder.fromUriString(MOVIE_INFO_URL)
+                .queryParam("id", "abc", "def")
+                .buildAndExpand().toUri();
+
+        // when
+        webTestClient.get()
+                .uri(uri.toString())
+                .exchange()
+                // then
+                .expectStatus().is2xxSuccessful()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(1);
+    }
+
+    @Test
+    void lookupMovieInfosTest() {
+        // when
+        webTestClient.post()
+                .uri(MOVIE_INFO_URL + "/lookup")
+                .bodyValue(new MovieInfoLookupRequest(List.of("abc", "def", "abc"), List.of("name")))
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.movieInfos.length()").isEqualTo(1)
+                .jsonPath("$.movieInfos[0].name").isEqualTo("Dark Knight Rises")
+                .jsonPath("$.movieInfos[0].year").doesNotExist()
+                .jsonPath("$.missingIds").isEqualTo(List.of("def"));
+    }
+
     @Test
     void getMovieInfoByIdTest() {
         // given
@@ -97,6 +246,21 @@ class MovieInfoControllerIntgTest {
                 .jsonPath("$.name").isEqualTo("Dark Knight Rises");
     }
 
+    @Test
+    void getMovieInfoByIdNotModifiedTest() {
+        // given
+        var movieInfoId = "abc";
+
+        // when
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL + "/{id}", movieInfoId)
+                .header(HttpHeaders.IF_NONE_MATCH, "\"0\"")
+                .exchange()
+                // then
+                .expectStatus().isNotModified()
+                .expectBody().isEmpty();
+    }
+
     @Test
     void getMovieInfoByIdNotFoundTest() {
         // given
@@ -132,6 +296,87 @@ class MovieInfoControllerIntgTest {
                 });
     }
 
+    @Test
+    void addMovieInfoWithExistingIdTest() {
+        // given
+        var movieInfo = new MovieInfo("abc", "Batman Begins1", 2005, List.of("Christian Bale", "Michael Cane"),
+                LocalDate.parse("2005-06-15"));
+
+        // when
+        webTestClient.post()
+                .uri(MOVIE_INFO_URL)
+                .bodyValue(movieInfo)
+                .exchange()
+                // then
+                .expectStatus().isEqualTo(HttpStatus.CONFLICT)
+                .expectBody(String.class)
+                .isEqualTo("A MovieInfo with the same id already exists");
+    }
+
+    @Test
+    void addMovieInfosTest() {
+        // given
+        // Un MovieInfo válido, uno que no cumple las validaciones y otro con un id que ya existe.
+        var movieInfos = List.of(new MovieInfo(null, "Batman Begins1", 2005, List.of("Christian Bale"),
+                        LocalDate.parse("2005-06-15")),
+                new MovieInfo(null, "", 2008, List.of("Christian Bale"), LocalDate.parse("2008-07-18")),
+                new MovieInfo("abc", "Dark Knight Rises1", 2012, List.of("Christian Bale"),
+                        LocalDate.parse("2012-07-20")));
+
+        // when
+        webTestClient.post()
+                .uri(MOVIE_INFO_URL + "/batch")
+                .bodyValue(movieInfos)
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectBodyList(MovieInfoBatchResult.class)
+                .consumeWith(listEntityExchangeResult -> {
+                    var results = listEntityExchangeResult.getResponseBody();
+
+                    assertNotNull(results);
+                    assertEquals(3, results.size());
+                    assertEquals(MovieInfoBatchResult.Status.CREATED, results.get(0).getStatus());
+                    assertNotNull(results.get(0).getMovieInfoId());
+                    assertEquals(MovieInfoBatchResult.Status.INVALID, results.get(1).getStatus());
+                    assertEquals("movieInfo.name must be present", results.get(1).getMessage());
+                    assertEquals(MovieInfoBatchResult.Status.DUPLICATE, results.get(2).getStatus());
+                });
+
+        StepVerifier.create(movieInfoRepository.findAll())
+                .expectNextCount(4)
+                .verifyComplete();
+    }
+
+    @Test
+    void searchMovieInfosTest() {
+        // given
+        var movieInfo = new MovieInfo(null, "Batman Returns", 1992, List.of("Michael Keaton", "Danny DeVito"),
+                LocalDate.parse("1992-06-19"));
+
+        webTestClient.post()
+                .uri(MOVIE_INFO_URL)
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus().isCreated();
+
+        // when
+        // El MovieInfo se añade al índice de búsqueda al guardarlo.
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL + "/search?q={q}", "batman kea")
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectBodyList(MovieInfo.class)
+                .consumeWith(listEntityExchangeResult -> {
+                    var movieInfos = listEntityExchangeResult.getResponseBody();
+
+                    assertNotNull(movieInfos);
+                    assertEquals(1, movieInfos.size());
+                    assertEquals("Batman Returns", movieInfos.get(0).getName());
+                });
+    }
+
     @Test
     void updateMovieInfoTest() {
         // given
@@ -174,6 +419,114 @@ class MovieInfoControllerIntgTest {
                 .expectStatus().isNotFound();
     }
 
+    @Test
+    void patchMovieInfoTest() {
+        // given
+        var movieInfoId = "abc";
+
+        // when
+        webTestClient.patch()
+                .uri(MOVIE_INFO_URL + "/{id}", movieInfoId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"year\": 2013}")
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectBody(MovieInfo.class)
+                .consumeWith(movieInfoEntityExchangeResult -> {
+                    var patchedMovieInfo = movieInfoEntityExchangeResult.getResponseBody();
+
+                    // El resto de campos no se modifican.
+                    assertNotNull(patchedMovieInfo);
+                    assertEquals(2013, patchedMovieInfo.getYear());
+                    assertEquals("Dark Knight Rises", patchedMovieInfo.getName());
+                    assertEquals(List.of("Christian Bale", "Tom Hardy"), patchedMovieInfo.getCast());
+                    assertEquals(LocalDate.parse("2012-07-20"), patchedMovieInfo.getReleaseDate());
+                });
+    }
+
+    @Test
+    void patchMovieInfoWithValidationTest() {
+        // when
+        webTestClient.patch()
+                .uri(MOVIE_INFO_URL + "/{id}", "abc")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"name\": \"\", \"year\": -2013}")
+                .exchange()
+                // then
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("movieInfo.name must be present,movieInfo.year must be a positive value");
+    }
+
+    @Test
+    void patchMovieInfoNotFoundTest() {
+        // when
+        webTestClient.patch()
+                .uri(MOVIE_INFO_URL + "/{id}", "def")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"year\": 2013}")
+                .exchange()
+                // then
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void updateMovieInfoWithIfMatchTest() {
+        // given
+        var movieInfoId = "abc";
+
+        var movieInfo = new MovieInfo(null, "Dark Knight Rises1", 2005, List.of("Christian Bale", "Michael Cane"),
+                LocalDate.parse("2005-06-15"));
+
+        var eTag = webTestClient.get()
+                .uri(MOVIE_INFO_URL + "/{id}", movieInfoId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"0\"")
+                .returnResult(MovieInfo.class)
+                .getResponseHeaders().getETag();
+
+        // when
+        // La primera actualización incrementa la versión, así que la segunda con el mismo "ETag" falla.
+        webTestClient.put()
+                .uri(MOVIE_INFO_URL + "/{id}", movieInfoId)
+                .header(HttpHeaders.IF_MATCH, eTag)
+                .bodyValue(movieInfo)
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1\"");
+
+        webTestClient.patch()
+                .uri(MOVIE_INFO_URL + "/{id}", movieInfoId)
+                .header(HttpHeaders.IF_MATCH, eTag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"year\": 2013}")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+
+        StepVerifier.create(movieInfoRepository.findById(movieInfoId))
+                .assertNext(updatedMovieInfo -> {
+                    assertEquals(2005, updatedMovieInfo.getYear());
+                    assertEquals(1L, updatedMovieInfo.getVersion());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void patchMovieInfoWithIfMatchNotFoundTest() {
+        // when
+        webTestClient.patch()
+                .uri(MOVIE_INFO_URL + "/{id}", "def")
+                .header(HttpHeaders.IF_MATCH, "\"0\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"year\": 2013}")
+                .exchange()
+                // then
+                .expectStatus().isNotFound();
+    }
+
     @Test
     void deleteMovieInfoByIdTest() {
         // given
@@ -0,0 +1,146 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.MovieInfo;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+// Comprobamos con el plan de ejecución("explain") que las consultas que construye el repositorio usan los índices y no
+// recorren toda la colección(COLLSCAN).
+
+@ActiveProfiles("test")
+@DataMongoTest
+class MovieInfoIndexesIntgTest {
+
+    @Autowired
+    MovieInfoRepository movieInfoRepository;
+
+    @Autowired
+    MongoMappingContext mongoMappingContext;
+
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @BeforeEach
+    void setUp() {
+        // Spring Data crea los índices al arrancar sin esperar a que terminen, así que nos aseguramos de que existen.
+        var indexOperations = reactiveMongoTemplate.indexOps(MovieInfo.class);
+
+        // Versión simplificada de la expresión "indexDefinition -> indexOperations.ensureIndex(indexDefinition)"
+        Flux.fromIterable(new MongoPersistentEntityIndexResolver(mongoMappingContext).resolveIndexFor(MovieInfo.class))
+                .concatMap(indexOperations::ensureIndex)
+                .blockLast();
+
+        var movieInfos = List.of(new MovieInfo(null, "Batman Begins", 2005, List.of("Christian Bale", "Michael Cane"),
+                        LocalDate.parse("2005-06-15")),
+                new MovieInfo(null, "The Dark Knight", 2008, List.of("Christian Bale", "HeathLedger"),
+                        LocalDate.parse("2008-07-18")),
+                new MovieInfo("abc", "Dark Knight Rises", 2012, List.of("Christian Bale", "Tom Hardy"),
+                        LocalDate.parse("2012-07-20")));
+
+        movieInfoRepository.saveAll(movieInfos).blockLast();
+    }
+
+    @AfterEach
+    void tearDown() {
+        movieInfoRepository.deleteAll().block();
+    }
+
+    @Test
+    void findByYearUsesIndexTest() {
+        assertNoCollectionScan(Query.query(Criteria.where("year").is(2005)));
+    }
+
+    @Test
+    void findByNameUsesIndexTest() {
+        assertNoCollectionScan(Query.query(Criteria.where("name").is("Batman Begins")));
+    }
+
+    @Test
+    void findAllByYearUsesIndexTest() {
+        assertNoCollectionScan(MovieInfoRepositoryCustomImpl.getAllQuery(2005, null, List.of("name")));
+    }
+
+    @Test
+    void findAllByIdsUsesIndexTest() {
+        assertNoCollectionScan(MovieInfoRepositoryCustomImpl.getAllQuery(null, List.of("abc", "def"), null));
+    }
+
+    @Test
+    void findPageByYearUsesIndexTest() {
+        assertNoCollectionScan(MovieInfoRepositoryCustomImpl.getPageQuery(2005, "000000000000000000000000", 2,
+                null));
+    }
+
+    @Test
+    void findPageByYearAfterStringIdUsesIndexTest() {
+        assertNoCollectionScan(MovieInfoRepositoryCustomImpl.getPageQuery(2012, "abc", 2, null));
+    }
+
+    @Test
+    void findPageAfterObjectIdUsesIndexTest() {
+        assertNoCollectionScan(MovieInfoRepositoryCustomImpl.getPageQuery(null, "000000000000000000000000", 2,
+                null));
+    }
+
+    // Sin año, después de un id de tipo String la consulta incluye los ObjectId con "$or" y "$type".
+    @Test
+    void findPageAfterStringIdUsesIndexTest() {
+        assertNoCollectionScan(MovieInfoRepositoryCustomImpl.getPageQuery(null, "abc", 2, List.of("name")));
+    }
+
+    @Test
+    void duplicatedNameIsRejectedTest() {
+        // given
+        var movieInfo = new MovieInfo(null, "Batman Begins", 2006, List.of("Christian Bale"),
+                LocalDate.parse("2006-06-15"));
+
+        // when
+        var monoOfMovieInfo = movieInfoRepository.save(movieInfo);
+
+        // then
+        StepVerifier.create(monoOfMovieInfo)
+                .expectError(DuplicateKeyException.class)
+                .verify();
+    }
+
+    // Convertimos la consulta igual que "ReactiveMongoTemplate"(nombres de los campos, ids...) antes de pedir su plan.
+    private void assertNoCollectionScan(Query query) {
+        var entity = mongoMappingContext.getRequiredPersistentEntity(MovieInfo.class);
+        var queryMapper = new QueryMapper(reactiveMongoTemplate.getConverter());
+        var filter = queryMapper.getMappedObject(query.getQueryObject(), entity);
+
+        var explain = reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(MovieInfo.class))
+                .flatMap(collection -> Mono.from(collection.find(filter)
+                        .projection(queryMapper.getMappedFields(query.getFieldsObject(), entity))
+                        .sort(queryMapper.getMappedSort(query.getSortObject(), entity))
+                        .limit(query.getLimit())
+                        .explain()))
+                .block();
+
+        assert explain != null;
+
+        var winningPlan = ((Document) explain.get("queryPlanner")).get("winningPlan", Document.class);
+
+        assertFalse(winningPlan.toJson().contains("COLLSCAN"), "Collection scan for " + filter.toJson());
+    }
+}
@@ -1,14 +1,25 @@
 package com.reactivespring.controller;
 
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoBatchResult;
+import com.reactivespring.domain.MovieInfoLookup;
+import com.reactivespring.domain.MovieInfoLookupRequest;
+import com.reactivespring.domain.MovieInfoPage;
+import com.reactivespring.domain.MovieInfoProjection;
 import com.reactivespring.service.MovieInfoService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -37,7 +48,9 @@ class MovieInfoControllerTest {
                 new MovieInfo("abc", "Dark Knight Rises", 2012, List.of("Christian Bale", "Tom Hardy"),
                         LocalDate.parse("2012-07-20")));
 
-        when(movieInfoService.getAllMovieInfos()).thenReturn(Flux.fromIterable(movieInfos));
+        // Sin el parámetro "limit" se usa el tamaño de página por defecto.
+        when(movieInfoService.getMovieInfosPage(null, null, 100, null))
+                .thenReturn(Mono.just(new MovieInfoPage(movieInfos, null)));
 
         // when
         webTestClient.get()
@@ -45,10 +58,226 @@ class MovieInfoControllerTest {
                 .exchange()
                 // then
                 .expectStatus().is2xxSuccessful()
+                .expectHeader().doesNotExist(MovieInfoController.NEXT_CURSOR_HEADER)
                 .expectBodyList(MovieInfo.class)
                 .hasSize(3);
     }
 
+    @Test
+    void getAllMovieInfosWithAnyAcceptTest() {
+        // given
+        var movieInfos = List.of(new MovieInfo("abc", "Dark Knight Rises", 2012, List.of("Christian Bale", "Tom Hardy"),
+                LocalDate.parse("2012-07-20")));
+
+        when(movieInfoService.getMovieInfosPage(null, null, 100, null))
+                .thenReturn(Mono.just(new MovieInfoPage(movieInfos, null)));
+
+        // when
+        // Los clientes que aceptan cualquier tipo de contenido siguen recibiendo un array JSON.
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL)
+                .accept(MediaType.ALL)
+                .exchange()
+                // then
+                .expectStatus().is2xxSuccessful()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_JSON)
+                .expectBodyList(MovieInfo.class)
+                .hasSize(1);
+    }
+
+    @Test
+    void streamAllMovieInfosTest() {
+        // given
+        var movieInfos = List.of(new MovieInfo(null, "Batman Begins", 2005, List.of("Christian Bale", "Michael Cane"),
+                        LocalDate.parse("2005-06-15")),
+                new MovieInfo("abc", "Batman Begins Again", 2005, List.of("Christian Bale", "Tom Hardy"),
+                        LocalDate.parse("2005-07-20")));
+
+        when(movieInfoService.getAllMovieInfos(2005, null)).thenReturn(Flux.fromIterable(movieInfos));
+
+        // when
+        var fluxOfMovieInfos = webTestClient.get()
+                .uri(MOVIE_INFO_URL + "?year=2005")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                // then
+                .expectStatus().is2xxSuccessful()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(MovieInfo.class)
+                .getResponseBody();
+
+        StepVerifier.create(fluxOfMovieInfos)
+                .expectNextCount(2)
+                .verifyComplete();
+    }
+
+    @Test
+    void getAllMovieInfosPageTest() {
+        // given
+        var movieInfos = List.of(new MovieInfo("abc", "Dark Knight Rises", 2012, List.of("Christian Bale", "Tom Hardy"),
+                LocalDate.parse("2012-07-20")));
+
+        // El tamaño de página pedido se limita al tamaño máximo.
+        when(movieInfoService.getMovieInfosPage(2012, "YWJj", 500, null))
+                .thenReturn(Mono.just(new MovieInfoPage(movieInfos, "ZGVm")));
+
+        // when
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL + "?year=2012&limit=1000&cursor=YWJj")
+                .exchange()
+                // then
+                .expectStatus().is2xxSuccessful()
+                .expectHeader().valueEquals(MovieInfoController.NEXT_CURSOR_HEADER, "ZGVm")
+                .expectBodyList(MovieInfo.class)
+                .hasSize(1);
+    }
+
+    @Test
+    void getAllMovieInfosWithFieldsTest() {
+        // given
+        var movieInfo = new MovieInfo();
+        movieInfo.setMovieInfoId("abc");
+        movieInfo.setName("Dark Knight Rises");
+        movieInfo.setYear(2012);
+
+        when(movieInfoService.getMovieInfosPage(null, null, 100, List.of("name", "year")))
+                .thenReturn(Mono.just(new MovieInfoPage(List.of(new MovieInfoProjection(movieInfo)), null)));
+
+        // when
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL + "?fields=name,year")
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                // Los campos que no se han pedido no aparecen en la respuesta.
+                .expectBody()
+                .jsonPath("$[0].name").isEqualTo("Dark Knight Rises")
+                .jsonPath("$[0].year").isEqualTo(2012)
+                .jsonPath("$[0].cast").doesNotExist()
+                .jsonPath("$[0].releaseDate").doesNotExist();
+    }
+
+    @Test
+    void getAllMovieInfosWithoutFieldsTest() {
+        // given
+        var movieInfo = new MovieInfo("abc", "Dark Knight Rises", 2012, null, null);
+
+        when(movieInfoService.getMovieInfosPage(null, null, 100, null))
+                .thenReturn(Mono.just(new MovieInfoPage(List.of(movieInfo), null)));
+
+        // when
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL)
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                // Sin el parámetro "fields" la respuesta incluye todos los campos, aunque no tengan valor.
+                .expectBody()
+                .jsonPath("$[0].name").isEqualTo("Dark Knight Rises")
+                .jsonPath("$[0].cast").isEmpty()
+                .jsonPath("$[0].releaseDate").isEmpty();
+    }
+
+    @Test
+    void getAllMovieInfosWithInvalidLimitTest() {
+        // when
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL + "?limit=0")
+                .exchange()
+                // then
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("The limit must be a positive value");
+
+        verify(movieInfoService, never()).getMovieInfosPage(any(), any(), anyInt(), any());
+    }
+
+    @Test
+    void getMovieInfosByIdsTest() {
+        // given
+        var movieInfos = List.of(new MovieInfo("abc", "Dark Knight Rises", 2012, List.of("Christian Bale", "Tom Hardy"),
+                        LocalDate.parse("2012-07-20")),
+                new MovieInfo("def", "Batman Begins", 2005, List.of("Christian Bale", "Michael Cane"),
+                        LocalDate.parse("2005-06-15")));
+
+        when(movieInfoService.getMovieInfosByIds(List.of("abc", "def"), null)).thenReturn(Flux.fromIterable(movieInfos));
+
+        // when
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL + "?id=abc&id=def")
+                .exchange()
+                // then
+                .expectStatus().is2xxSuccessful()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(2);
+    }
+
+    @Test
+    void lookupMovieInfosTest() {
+        // given
+        var movieInfoLookup = new MovieInfoLookup(List.of(new MovieInfo("abc", "Dark Knight Rises", 2012,
+                List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"))), List.of("def"));
+
+        when(movieInfoService.lookupMovieInfos(List.of("abc", "def"), null)).thenReturn(Mono.just(movieInfoLookup));
+
+        // when
+        webTestClient.post()
+                .uri(MOVIE_INFO_URL + "/lookup")
+                .bodyValue(new MovieInfoLookupRequest(List.of("abc", "def"), null))
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectBody(MovieInfoLookup.class)
+                .isEqualTo(movieInfoLookup);
+    }
+
+    @Test
+    void lookupMovieInfosWithoutIdsTest() {
+        // when
+        webTestClient.post()
+                .uri(MOVIE_INFO_URL + "/lookup")
+                .bodyValue(new MovieInfoLookupRequest(List.of(), null))
+                .exchange()
+                // then
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("movieInfoLookup.ids must be present");
+
+        verify(movieInfoService, never()).lookupMovieInfos(any(), any());
+    }
+
+    @Test
+    void searchMovieInfosTest() {
+        // given
+        var movieInfos = List.of(new MovieInfo("abc", "Dark Knight Rises", 2012, List.of("Christian Bale", "Tom Hardy"),
+                LocalDate.parse("2012-07-20")));
+
+        when(movieInfoService.searchMovieInfos("dark kni", 20)).thenReturn(Flux.fromIterable(movieInfos));
+
+        // when
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL + "/search?q={q}", "dark kni")
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectBodyList(MovieInfo.class)
+                .isEqualTo(movieInfos);
+    }
+
+    @Test
+    void searchMovieInfosWithoutQueryTest() {
+        // when
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL + "/search?q=")
+                .exchange()
+                // then
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("The search query must be present");
+
+        verify(movieInfoService, never()).searchMovieInfos(any(), anyInt());
+    }
+
     @Test
     void getMovieInfoByIdTest() {
         // given
@@ -77,6 +306,55 @@ class MovieInfoControllerTest {
                 .jsonPath("$.name").isEqualTo("Dark Knight Rises");
     }
 
+    @Test
+    void getMovieInfoByIdWithETagTest() {
+        // given
+        var movieInfoId = "abc";
+        var movieInfo = new MovieInfo(movieInfoId, "Dark Knight Rises", 2012, List.of("Christian Bale", "Tom Hardy"),
+                LocalDate.parse("2012-07-20"), 3L);
+
+        when(movieInfoService.getMovieInfoById(anyString())).thenReturn(Mono.just(movieInfo));
+
+        // when
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL + "/{id}", movieInfoId)
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"3\"")
+                .expectBody()
+                .jsonPath("$.version").isEqualTo(3);
+    }
+
+    @Test
+    void getMovieInfoByIdNotModifiedTest() {
+        // given
+        var movieInfoId = "abc";
+        var movieInfo = new MovieInfo(movieInfoId, "Dark Knight Rises", 2012, List.of("Christian Bale", "Tom Hardy"),
+                LocalDate.parse("2012-07-20"), 3L);
+
+        when(movieInfoService.getMovieInfoById(anyString())).thenReturn(Mono.just(movieInfo));
+
+        // when
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL + "/{id}", movieInfoId)
+                .header(HttpHeaders.IF_NONE_MATCH, "\"3\"")
+                .exchange()
+                // then
+                .expectStatus().isNotModified()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"3\"")
+                .expectBody().isEmpty();
+
+        // Con otra versión se devuelve el MovieInfo completo.
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL + "/{id}", movieInfoId)
+                .header(HttpHeaders.IF_NONE_MATCH, "\"2\"")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.name").isEqualTo("Dark Knight Rises");
+    }
+
     @Test
     void addMovieInfoTest() {
         // given
@@ -105,6 +383,48 @@ class MovieInfoControllerTest {
                 });
     }
 
+    @Test
+    void addMovieInfoWithDuplicatedNameTest() {
+        // given
+        var movieInfo = new MovieInfo(null, "Batman Begins", 2005, List.of("Christian Bale", "Michael Cane"),
+                LocalDate.parse("2005-06-15"));
+
+        when(movieInfoService.addMovieInfo(any(MovieInfo.class)))
+                .thenReturn(Mono.error(new DuplicateKeyException("E11000 duplicate key error collection: "
+                        + "movieinfodb.movie_infos index: name dup key: { name: \"Batman Begins\" }")));
+
+        // when
+        webTestClient.post()
+                .uri(MOVIE_INFO_URL)
+                .bodyValue(movieInfo)
+                .exchange()
+                // then
+                .expectStatus().isEqualTo(HttpStatus.CONFLICT)
+                .expectBody(String.class)
+                .isEqualTo("A MovieInfo with the same name already exists");
+    }
+
+    @Test
+    void addMovieInfoWithDuplicatedIdTest() {
+        // given
+        var movieInfo = new MovieInfo("abc", "Batman Begins", 2005, List.of("Christian Bale", "Michael Cane"),
+                LocalDate.parse("2005-06-15"));
+
+        when(movieInfoService.addMovieInfo(any(MovieInfo.class)))
+                .thenReturn(Mono.error(new DuplicateKeyException("E11000 duplicate key error collection: "
+                        + "movieinfodb.movie_infos index: _id_ dup key: { _id: \"abc\" }")));
+
+        // when
+        webTestClient.post()
+                .uri(MOVIE_INFO_URL)
+                .bodyValue(movieInfo)
+                .exchange()
+                // then
+                .expectStatus().isEqualTo(HttpStatus.CONFLICT)
+                .expectBody(String.class)
+                .isEqualTo("A MovieInfo with the same id already exists");
+    }
+
     @Test
     void addMovieInfoWithValidationTest() {
         // given
@@ -130,6 +450,56 @@ class MovieInfoControllerTest {
                 });
     }
 
+    @Test
+    void addMovieInfosTest() {
+        // given
+        var movieInfos = List.of(new MovieInfo(null, "Batman Begins1", 2005, List.of("Christian Bale"),
+                        LocalDate.parse("2005-06-15")),
+                new MovieInfo(null, "", 2008, List.of("Christian Bale"), LocalDate.parse("2008-07-18")));
+
+        when(movieInfoService.addMovieInfos(any())).thenAnswer(invocation -> invocation.<Flux<MovieInfo>>getArgument(0)
+                .index()
+                .map(tuple -> new MovieInfoBatchResult(tuple.getT1(), MovieInfoBatchResult.Status.CREATED,
+                        "mockId" + tuple.getT1(), null)));
+
+        // when
+        webTestClient.post()
+                .uri(MOVIE_INFO_URL + "/batch")
+                .bodyValue(movieInfos)
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectBodyList(MovieInfoBatchResult.class)
+                .isEqualTo(List.of(
+                        new MovieInfoBatchResult(0, MovieInfoBatchResult.Status.CREATED, "mockId0", null),
+                        new MovieInfoBatchResult(1, MovieInfoBatchResult.Status.CREATED, "mockId1", null)));
+    }
+
+    @Test
+    void addMovieInfosFromNdjsonTest() {
+        // given
+        var body = "{\"name\": \"Batman Begins1\", \"year\": 2005, \"cast\": [\"Christian Bale\"]}\n"
+                + "{\"name\": \"The Dark Knight1\", \"year\": 2008, \"cast\": [\"Christian Bale\"]}\n";
+
+        when(movieInfoService.addMovieInfos(any())).thenAnswer(invocation -> invocation.<Flux<MovieInfo>>getArgument(0)
+                .index()
+                .map(tuple -> new MovieInfoBatchResult(tuple.getT1(), MovieInfoBatchResult.Status.CREATED,
+                        tuple.getT2().getName(), null)));
+
+        // when
+        webTestClient.post()
+                .uri(MOVIE_INFO_URL + "/batch")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue(body)
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectBodyList(MovieInfoBatchResult.class)
+                .isEqualTo(List.of(
+                        new MovieInfoBatchResult(0, MovieInfoBatchResult.Status.CREATED, "Batman Begins1", null),
+                        new MovieInfoBatchResult(1, MovieInfoBatchResult.Status.CREATED, "The Dark Knight1", null)));
+    }
+
     @Test
     void updateMovieInfoTest() {
         // given
@@ -141,7 +511,8 @@ class MovieInfoControllerTest {
         var updatedMovieInfo = new MovieInfo(movieInfoId, "Dark Knight Rises1", 2005, List.of("Christian Bale", "Michael Cane"),
                 LocalDate.parse("2005-06-15"));
 
-        when(movieInfoService.updateMovieInfo(anyString(), any(MovieInfo.class))).thenReturn(Mono.just(updatedMovieInfo));
+        when(movieInfoService.updateMovieInfo(anyString(), any(MovieInfo.class), isNull()))
+                .thenReturn(Mono.just(updatedMovieInfo));
 
         // when
         webTestClient.put()
@@ -160,6 +531,109 @@ class MovieInfoControllerTest {
                 });
     }
 
+    @Test
+    void updateMovieInfoWithIfMatchTest() {
+        // given
+        var movieInfoId = "abc";
+
+        var movieInfo = new MovieInfo(null, "Dark Knight Rises1", 2005, List.of("Christian Bale", "Michael Cane"),
+                LocalDate.parse("2005-06-15"));
+
+        var updatedMovieInfo = new MovieInfo(movieInfoId, "Dark Knight Rises1", 2005, List.of("Christian Bale", "Michael Cane"),
+                LocalDate.parse("2005-06-15"), 4L);
+
+        when(movieInfoService.updateMovieInfo(anyString(), any(MovieInfo.class), eq(3L)))
+                .thenReturn(Mono.just(updatedMovieInfo));
+
+        // when
+        webTestClient.put()
+                .uri(MOVIE_INFO_URL + "/{id}", movieInfoId)
+                .header(HttpHeaders.IF_MATCH, "\"3\"")
+                .bodyValue(movieInfo)
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"4\"");
+    }
+
+    @Test
+    void updateMovieInfoWithVersionMismatchTest() {
+        // given
+        var movieInfo = new MovieInfo(null, "Dark Knight Rises1", 2005, List.of("Christian Bale", "Michael Cane"),
+                LocalDate.parse("2005-06-15"));
+
+        when(movieInfoService.updateMovieInfo(anyString(), any(MovieInfo.class), eq(3L)))
+                .thenReturn(Mono.error(new OptimisticLockingFailureException("The MovieInfo abc does not have the version 3")));
+
+        // when
+        webTestClient.put()
+                .uri(MOVIE_INFO_URL + "/{id}", "abc")
+                .header(HttpHeaders.IF_MATCH, "\"3\"")
+                .bodyValue(movieInfo)
+                .exchange()
+                // then
+                .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED)
+                .expectBody(String.class)
+                .isEqualTo("The MovieInfo has been modified by another request");
+    }
+
+    @Test
+    void patchMovieInfoWithInvalidIfMatchTest() {
+        // when
+        webTestClient.patch()
+                .uri(MOVIE_INFO_URL + "/{id}", "abc")
+                .header(HttpHeaders.IF_MATCH, "\"xyz\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"year\": 2013}")
+                .exchange()
+                // then
+                .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+
+        verify(movieInfoService, never()).patchMovieInfo(anyString(), any(MovieInfo.class), any());
+    }
+
+    @Test
+    void patchMovieInfoTest() {
+        // given
+        var movieInfoId = "abc";
+
+        var patchedMovieInfo = new MovieInfo(movieInfoId, "Dark Knight Rises", 2013, List.of("Christian Bale", "Tom Hardy"),
+                LocalDate.parse("2012-07-20"));
+
+        when(movieInfoService.patchMovieInfo(anyString(), any(MovieInfo.class), isNull()))
+                .thenReturn(Mono.just(patchedMovieInfo));
+
+        // when
+        webTestClient.patch()
+                .uri(MOVIE_INFO_URL + "/{id}", movieInfoId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"year\": 2013}")
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.year").isEqualTo(2013)
+                .jsonPath("$.name").isEqualTo("Dark Knight Rises");
+
+        verify(movieInfoService).patchMovieInfo(eq(movieInfoId), argThat(movieInfo -> movieInfo.getYear() == 2013
+                && movieInfo.getName() == null), isNull());
+    }
+
+    @Test
+    void patchMovieInfoNotFoundTest() {
+        // given
+        when(movieInfoService.patchMovieInfo(anyString(), any(MovieInfo.class), isNull())).thenReturn(Mono.empty());
+
+        // when
+        webTestClient.patch()
+                .uri(MOVIE_INFO_URL + "/{id}", "def")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"year\": 2013}")
+                .exchange()
+                // then
+                .expectStatus().isNotFound();
+    }
+
     @Test
     void deleteMovieInfoByIdTest() {
         // given
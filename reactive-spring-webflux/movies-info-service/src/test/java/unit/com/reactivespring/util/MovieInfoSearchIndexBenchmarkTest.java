@@ -0,0 +1,87 @@
+package com.reactivespring.util;
+
+import com.reactivespring.domain.MovieInfo;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Pruebas de rendimiento del índice de búsqueda. Tardan mucho, así que no se ejecutan con el resto de pruebas sino con
+// la tarea "benchmark"(./gradlew benchmark).
+@Tag("benchmark")
+class MovieInfoSearchIndexBenchmarkTest {
+    private static final Logger log = LoggerFactory.getLogger(MovieInfoSearchIndexBenchmarkTest.class);
+
+    // Mide la latencia de la búsqueda con catálogos de distintos tamaños. No es un benchmark preciso(no hay JMH en el
+    // proyecto), pero sirve para ver cómo crece la latencia con el tamaño del catálogo y para detectar regresiones
+    // graves.
+    @Test
+    void searchLatencyByCatalogSizeTest() {
+        var queries = List.of("dark kni", "christian", "ba", "tom hardy", "amel", "knight rises bale");
+
+        for(var catalogSize : List.of(1_000, 10_000, 100_000)) {
+            // given
+            var index = new MovieInfoSearchIndex();
+            index.rebuild(generateCatalog(catalogSize));
+
+            // Calentamos la JVM antes de medir.
+            for(var i = 0; i < 200; i++)
+                index.search(queries.get(i % queries.size()), 20);
+
+            // when
+            var latencies = new ArrayList<Long>();
+
+            for(var i = 0; i < 300; i++) {
+                var start = System.nanoTime();
+                index.search(queries.get(i % queries.size()), 20);
+                latencies.add(System.nanoTime() - start);
+            }
+
+            // then
+            latencies.sort(null);
+
+            var p50 = latencies.get(latencies.size() / 2) / 1_000_000.0;
+            var p99 = latencies.get(latencies.size() * 99 / 100) / 1_000_000.0;
+
+            log.info("Search latency with {} MovieInfos: p50={} ms, p99={} ms", catalogSize,
+                    String.format("%.3f", p50), String.format("%.3f", p99));
+
+            // Margen muy amplio para no fallar en máquinas lentas.
+            assertTrue(p50 < 500, "p50 search latency too high: " + p50 + " ms");
+        }
+    }
+
+    // Catálogo sintético con palabras repetidas entre películas, como en un catálogo real.
+    private static List<MovieInfo> generateCatalog(int size) {
+        var random = new Random(42);
+        var words = Arrays.asList("dark", "knight", "rises", "batman", "begins", "amelie", "return", "night", "day",
+                "love", "war", "star", "space", "city", "lost", "last", "first", "black", "white", "red", "blue",
+                "king", "queen", "man", "woman", "story", "legend", "ghost", "house", "river");
+        var names = Arrays.asList("christian", "bale", "tom", "hardy", "heath", "ledger", "michael", "caine", "audrey",
+                "tautou", "anne", "hathaway", "gary", "oldman", "morgan", "freeman", "scarlett", "johansson");
+
+        var movieInfos = new ArrayList<MovieInfo>(size);
+
+        for(var i = 0; i < size; i++) {
+            var name = random.ints(3, 0, words.size())
+                    .mapToObj(words::get)
+                    .collect(Collectors.joining(" ")) + " " + i;
+            var cast = random.ints(4, 0, names.size() - 1)
+                    .mapToObj(position -> names.get(position) + " " + names.get(position + 1))
+                    .collect(Collectors.toList());
+
+            movieInfos.add(new MovieInfo(String.valueOf(i), name, 2000 + i % 20, cast, LocalDate.parse("2005-06-15")));
+        }
+
+        return movieInfos;
+    }
+}
@@ -0,0 +1,152 @@
+package com.reactivespring.util;
+
+import com.reactivespring.domain.MovieInfo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MovieInfoSearchIndexTest {
+    MovieInfoSearchIndex movieInfoSearchIndex;
+
+    @BeforeEach
+    void setUp() {
+        movieInfoSearchIndex = new MovieInfoSearchIndex();
+
+        movieInfoSearchIndex.index(new MovieInfo("1", "Batman Begins", 2005, List.of("Christian Bale", "Michael Cane"),
+                LocalDate.parse("2005-06-15")));
+        movieInfoSearchIndex.index(new MovieInfo("2", "The Dark Knight", 2008, List.of("Christian Bale", "HeathLedger"),
+                LocalDate.parse("2008-07-18")));
+        movieInfoSearchIndex.index(new MovieInfo("3", "Dark Knight Rises", 2012, List.of("Christian Bale", "Tom Hardy"),
+                LocalDate.parse("2012-07-20")));
+        movieInfoSearchIndex.index(new MovieInfo("4", "Amélie", 2001, List.of("Audrey Tautou"),
+                LocalDate.parse("2001-04-25")));
+    }
+
+    @Test
+    void searchByNameTest() {
+        // when
+        var movieInfos = movieInfoSearchIndex.search("dark knight", 10);
+
+        // then
+        assertEquals(List.of("3", "2"), getIds(movieInfos));
+    }
+
+    @Test
+    void prefixSearchTest() {
+        // when
+        var movieInfos = movieInfoSearchIndex.search("dark kni", 10);
+
+        // then
+        assertEquals(2, movieInfos.size());
+        assertTrue(movieInfoSearchIndex.search("dark knives", 10).isEmpty());
+    }
+
+    @Test
+    void nameRanksAboveCastTest() {
+        // given
+        movieInfoSearchIndex.index(new MovieInfo("5", "The Machinist", 2004, List.of("Christian Bale"),
+                LocalDate.parse("2004-10-22")));
+        movieInfoSearchIndex.index(new MovieInfo("6", "Christian", 2010, List.of("Somebody Else"),
+                LocalDate.parse("2010-01-01")));
+
+        // when
+        var movieInfos = movieInfoSearchIndex.search("christian", 10);
+
+        // then
+        // La película con la palabra en el nombre va primero y el resto solo la tienen en el reparto.
+        assertEquals(5, movieInfos.size());
+        assertEquals("6", movieInfos.get(0).getMovieInfoId());
+    }
+
+    @Test
+    void exactTermRanksAbovePrefixTest() {
+        // given
+        movieInfoSearchIndex.index(new MovieInfo("5", "Bat", 2020, List.of(), LocalDate.parse("2020-01-01")));
+
+        // when
+        var movieInfos = movieInfoSearchIndex.search("bat", 10);
+
+        // then
+        assertEquals(List.of("5", "1"), getIds(movieInfos));
+    }
+
+    @Test
+    void searchIgnoresCaseAndAccentsTest() {
+        // then
+        assertEquals(List.of("4"), getIds(movieInfoSearchIndex.search("AMELIE", 10)));
+        assertEquals(List.of("4"), getIds(movieInfoSearchIndex.search("tautou", 10)));
+    }
+
+    @Test
+    void updateReplacesPreviousTermsTest() {
+        // when
+        movieInfoSearchIndex.index(new MovieInfo("1", "Batman Returns", 1992, List.of("Michael Keaton"),
+                LocalDate.parse("1992-06-19")));
+
+        // then
+        assertTrue(movieInfoSearchIndex.search("begins", 10).isEmpty());
+        assertEquals(List.of("1"), getIds(movieInfoSearchIndex.search("batman keaton", 10)));
+        assertEquals(4, movieInfoSearchIndex.size());
+    }
+
+    @Test
+    void removeTest() {
+        // when
+        movieInfoSearchIndex.remove("2");
+
+        // then
+        assertEquals(List.of("3"), getIds(movieInfoSearchIndex.search("dark", 10)));
+        assertEquals(3, movieInfoSearchIndex.size());
+    }
+
+    @Test
+    void rebuildTest() {
+        // when
+        movieInfoSearchIndex.rebuild(List.of(new MovieInfo("7", "Inception", 2010, List.of("Leonardo DiCaprio"),
+                LocalDate.parse("2010-07-16"))));
+
+        // then
+        assertTrue(movieInfoSearchIndex.search("dark", 10).isEmpty());
+        assertEquals(List.of("7"), getIds(movieInfoSearchIndex.search("incep", 10)));
+        assertEquals(1, movieInfoSearchIndex.size());
+    }
+
+    @Test
+    void changesDuringRebuildAreKeptTest() {
+        // given
+        var rebuild = movieInfoSearchIndex.startRebuild();
+        // Copia de los MovieInfo leída antes de los cambios.
+        var allMovieInfos = List.of(
+                new MovieInfo("1", "Batman Begins", 2005, List.of("Christian Bale"), LocalDate.parse("2005-06-15")),
+                new MovieInfo("2", "The Dark Knight", 2008, List.of("Christian Bale"), LocalDate.parse("2008-07-18")));
+
+        // when
+        movieInfoSearchIndex.index(new MovieInfo("8", "Dark Shadows", 2012, List.of("Johnny Depp"),
+                LocalDate.parse("2012-05-11")));
+        movieInfoSearchIndex.remove("2");
+        rebuild.complete(allMovieInfos);
+
+        // then
+        assertEquals(List.of("8"), getIds(movieInfoSearchIndex.search("dark", 10)));
+        assertEquals(2, movieInfoSearchIndex.size());
+    }
+
+    @Test
+    void limitTest() {
+        // then
+        assertEquals(2, movieInfoSearchIndex.search("bale", 2).size());
+        assertTrue(movieInfoSearchIndex.search("  ", 10).isEmpty());
+    }
+
+    private static List<String> getIds(List<MovieInfo> movieInfos) {
+        return movieInfos.stream()
+                // Versión simplificada de la expresión "movieInfo -> movieInfo.getMovieInfoId()"
+                .map(MovieInfo::getMovieInfoId)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,32 @@
+package com.reactivespring.config;
+
+import com.reactivespring.repository.ReviewStatsRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+// Crea al arrancar la aplicación las estadísticas que faltan de las películas con reviews guardadas antes de añadir las
+// estadísticas(o escritas directamente en MongoDB). Las películas que ya tienen estadísticas no se modifican, así que
+// arrancar otra vez solo recorre las reviews.
+// Esperamos a que termine antes de dar la aplicación por arrancada.
+
+@Slf4j
+@RequiredArgsConstructor
+@Component
+public class ReviewStatsInitializer {
+    private final ReviewStatsRepository reviewStatsRepository;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void seedStats() {
+        reviewStatsRepository.seedMissingStats()
+                .doOnNext(count -> log.info("Review stats created for {} movies", count))
+                .onErrorResume(ex -> {
+                    log.error("Exception caught while creating the review stats: {}", ex.getMessage(), ex);
+                    return Mono.empty();
+                })
+                .block();
+    }
+}
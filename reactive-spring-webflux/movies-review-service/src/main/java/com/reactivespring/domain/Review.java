@@ -2,15 +2,30 @@ package com.reactivespring.domain;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import java.time.Instant;
 
 @Data
+@NoArgsConstructor
 @AllArgsConstructor
 @Document(value = "reviews")
+// Un índice por cada orden del listado(más recientes o mejor puntuadas), con y sin el filtro por película. El "_id" al
+// final deshace los empates y permite paginar por clave con el mismo índice. Los índices que empiezan por
+// "movieInfoId" también sirven para recuperar las reviews de una película(o de varias películas a la vez).
+@CompoundIndexes({
+        @CompoundIndex(name = "movieInfoId_createdAt", def = "{'movieInfoId': 1, 'createdAt': -1, '_id': -1}"),
+        @CompoundIndex(name = "movieInfoId_rating", def = "{'movieInfoId': 1, 'rating': -1, '_id': -1}"),
+        @CompoundIndex(name = "createdAt", def = "{'createdAt': -1, '_id': -1}"),
+        @CompoundIndex(name = "rating", def = "{'rating': -1, '_id': -1}")
+})
 public class Review {
 
     @Id
@@ -22,4 +37,20 @@ public class Review {
 
     @Min(value = 0L, message = "review.rating: please pass a non-negative value")
     private Double rating;
+
+    // Versión del documento para el control de concurrencia optimista. Spring Data la incrementa en cada escritura y se
+    // devuelve a los clientes en la cabecera "ETag".
+    @Version
+    private Long version;
+
+    // Fecha de creación de la review para ordenar el listado por las más recientes. La asigna el servicio.
+    private Instant createdAt;
+
+    public Review(String reviewId, Long movieInfoId, String comment, Double rating) {
+        this(reviewId, movieInfoId, comment, rating, null, null);
+    }
+
+    public Review(String reviewId, Long movieInfoId, String comment, Double rating, Long version) {
+        this(reviewId, movieInfoId, comment, rating, version, null);
+    }
 }
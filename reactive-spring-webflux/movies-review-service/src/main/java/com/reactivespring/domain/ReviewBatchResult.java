@@ -0,0 +1,24 @@
+package com.reactivespring.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Resultado de cada una de las reviews recibidas en una carga masiva. El campo "index" es la posición de la review en
+// la petición.
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ReviewBatchResult {
+    private long index;
+    private Status status;
+    private String reviewId;
+    private String message;
+
+    public enum Status {
+        CREATED, INVALID, DUPLICATE, FAILED
+    }
+}
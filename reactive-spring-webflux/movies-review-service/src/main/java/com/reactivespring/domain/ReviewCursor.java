@@ -0,0 +1,65 @@
+package com.reactivespring.domain;
+
+import com.reactivespring.exception.ReviewDataException;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+// Posición de la última review de una página: el orden del listado, el valor del campo por el que se ordena(null si la
+// review no lo tiene) y el id de la review. Se envía al cliente codificada en Base64(Por ejemplo: "newest|1697...|abc").
+
+@Getter
+@AllArgsConstructor
+public class ReviewCursor {
+    private static final String SEPARATOR = "|";
+
+    private final ReviewSort sort;
+    private final Object value;
+    private final String reviewId;
+
+    public static ReviewCursor of(ReviewSort sort, Review review) {
+        var value = sort == ReviewSort.NEWEST ? review.getCreatedAt() : review.getRating();
+
+        return new ReviewCursor(sort, value, review.getReviewId());
+    }
+
+    public String encode() {
+        String encodedValue;
+
+        if(value == null)
+            encodedValue = "";
+        else if(value instanceof Instant)
+            encodedValue = String.valueOf(((Instant) value).toEpochMilli());
+        else
+            encodedValue = value.toString();
+
+        var cursor = sort.name().toLowerCase() + SEPARATOR + encodedValue + SEPARATOR + reviewId;
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // El cursor solo es válido con el mismo orden con el que se generó.
+    public static ReviewCursor decode(String cursor, ReviewSort sort) {
+        try {
+            var parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8)
+                    .split("\\" + SEPARATOR, 3);
+
+            if(parts.length != 3 || !parts[0].equals(sort.name().toLowerCase()) || parts[2].isBlank())
+                throw new ReviewDataException("The cursor is not valid: " + cursor);
+
+            Object value = null;
+
+            if(!parts[1].isEmpty())
+                value = sort == ReviewSort.NEWEST ? Instant.ofEpochMilli(Long.parseLong(parts[1]))
+                        : Double.valueOf(parts[1]);
+
+            return new ReviewCursor(sort, value, parts[2]);
+        } catch(IllegalArgumentException ex) {
+            // También incluye NumberFormatException
+            throw new ReviewDataException("The cursor is not valid: " + cursor);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.reactivespring.domain;
+
+import com.reactivespring.exception.ReviewDataException;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+// Órdenes del listado de reviews. Todos son descendentes y los empates se deshacen con el id de la review.
+
+@Getter
+@RequiredArgsConstructor
+public enum ReviewSort {
+    NEWEST("createdAt"),
+    RATING("rating");
+
+    private final String field;
+
+    // Por ejemplo: "newest" -> NEWEST. Sin valor se ordenan por las más recientes.
+    public static ReviewSort parse(String value) {
+        if(value == null)
+            return NEWEST;
+
+        return Arrays.stream(values())
+                .filter(sort -> sort.name().equalsIgnoreCase(value))
+                .findFirst()
+                .orElseThrow(() -> new ReviewDataException("The sort is not valid, it must be one of: "
+                        + Arrays.stream(values())
+                                .map(sort -> sort.name().toLowerCase())
+                                .collect(Collectors.joining(","))));
+    }
+}
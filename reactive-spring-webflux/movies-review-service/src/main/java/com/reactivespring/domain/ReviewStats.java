@@ -0,0 +1,50 @@
+package com.reactivespring.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Estadísticas de las puntuaciones de una película. Se actualizan cada vez que se añade, modifica o elimina una review,
+// así que leerlas no requiere recorrer todas las reviews. Las reviews sin puntuación no se tienen en cuenta.
+// El histograma cuenta las puntuaciones de cada rango [n, n + 1)(Por ejemplo: la puntuación 8.5 cuenta en "8").
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(value = "review_stats")
+public class ReviewStats {
+
+    @Id
+    private Long movieInfoId;
+    private long count;
+
+    @JsonIgnore
+    private double ratingSum;
+    private Double minRating;
+    private Double maxRating;
+    private Map<String, Long> histogram = new HashMap<>();
+
+    // Se incrementa con cada actualización de las estadísticas. Sirve para recalcular la puntuación mínima y máxima
+    // solo si nadie ha modificado las estadísticas mientras tanto.
+    @JsonIgnore
+    private long revision;
+
+    public ReviewStats(Long movieInfoId) {
+        this.movieInfoId = movieInfoId;
+    }
+
+    public ReviewStats(Long movieInfoId, long count, double ratingSum, Double minRating, Double maxRating,
+                       Map<String, Long> histogram) {
+        this(movieInfoId, count, ratingSum, minRating, maxRating, histogram, 0L);
+    }
+
+    public Double getAverage() {
+        return count == 0 ? null : ratingSum / count;
+    }
+}
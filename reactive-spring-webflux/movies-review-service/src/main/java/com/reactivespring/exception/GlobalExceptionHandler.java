@@ -4,6 +4,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.web.reactive.error.ErrorWebExceptionHandler;
 import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
@@ -24,6 +25,13 @@ public class GlobalExceptionHandler implements ErrorWebExceptionHandler {
             exchange.getResponse().setStatusCode(HttpStatus.BAD_REQUEST);
         else if(ex instanceof ReviewNotFoundException)
             exchange.getResponse().setStatusCode(HttpStatus.NOT_FOUND);
+        else if(ex instanceof ReviewPreconditionFailedException)
+            exchange.getResponse().setStatusCode(HttpStatus.PRECONDITION_FAILED);
+        else if(ex instanceof ReviewTooManyRequestsException) {
+            exchange.getResponse().setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+            // Los clientes pueden volver a intentarlo cuando se haya vaciado la cola.
+            exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, "1");
+        }
         else
             exchange.getResponse().setStatusCode(HttpStatus.INTERNAL_SERVER_ERROR);
 
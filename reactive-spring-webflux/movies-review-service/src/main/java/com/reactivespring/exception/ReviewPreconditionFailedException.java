@@ -0,0 +1,12 @@
+package com.reactivespring.exception;
+
+public class ReviewPreconditionFailedException extends RuntimeException{
+
+    public ReviewPreconditionFailedException(String message, Throwable ex) {
+        super(message, ex);
+    }
+
+    public ReviewPreconditionFailedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package com.reactivespring.exception;
+
+public class ReviewTooManyRequestsException extends RuntimeException{
+
+    public ReviewTooManyRequestsException(String message) {
+        super(message);
+    }
+}
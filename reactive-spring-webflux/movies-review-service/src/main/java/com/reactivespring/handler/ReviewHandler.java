@@ -1,68 +1,440 @@
 package com.reactivespring.handler;
 
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewBatchResult;
+import com.reactivespring.domain.ReviewCursor;
+import com.reactivespring.domain.ReviewSort;
 import com.reactivespring.exception.ReviewDataException;
 import com.reactivespring.exception.ReviewNotFoundException;
+import com.reactivespring.exception.ReviewPreconditionFailedException;
+import com.reactivespring.exception.ReviewTooManyRequestsException;
+import com.reactivespring.domain.ReviewStats;
 import com.reactivespring.repository.ReviewRepository;
-import lombok.AllArgsConstructor;
+import com.reactivespring.repository.ReviewStatsRepository;
+import com.reactivespring.util.ReviewWriteBehindQueue;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Slf4j
-@AllArgsConstructor
+@RequiredArgsConstructor
 @Component
 public class ReviewHandler {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    // Código de error de MongoDB para las claves duplicadas.
+    private static final int DUPLICATE_KEY_ERROR_CODE = 11000;
+    // Marcas que se mezclan con las reviews de la carga masiva para cerrar el lote en curso: cada "batchMaxWait" y al
+    // terminar el cuerpo de la petición.
+    private static final Tuple2<Long, Review> FLUSH = Tuples.of(-1L, new Review());
+    private static final Tuple2<Long, Review> END = Tuples.of(-2L, new Review());
+
     private final ReviewRepository reviewRepository;
+    private final ReviewStatsRepository reviewStatsRepository;
     private final Validator validator;
 
+    // Tamaño de página por defecto y tamaño máximo que puede pedir un cliente.
+    @Value("${review.pagination.defaultLimit:20}")
+    private int defaultLimit;
+
+    @Value("${review.pagination.maxLimit:100}")
+    private int maxLimit;
+
+    // Número máximo de reviews de cada lote de la carga masiva, tiempo máximo que se espera a completar un lote y número
+    // máximo de lotes que se escriben a la vez.
+    @Value("${review.batch.size:500}")
+    private int batchSize;
+
+    @Value("${review.batch.maxWait:100ms}")
+    private Duration batchMaxWait;
+
+    @Value("${review.batch.concurrency:2}")
+    private int batchConcurrency;
+
+    // Número máximo de reviews que se piden a MongoDB cada vez en el listado en streaming.
+    @Value("${review.stream.limitRate:256}")
+    private int streamLimitRate;
+
+    // Modo "write-behind" del alta de reviews: número máximo de reviews pendientes de escribir, número máximo de
+    // reviews de cada escritura, cada cuánto tiempo se escriben las reviews pendientes, espera inicial antes de
+    // reintentar una escritura fallida y tiempo máximo que se espera a escribirlas al parar el servicio.
+    @Value("${review.writeBehind.enabled:false}")
+    private boolean writeBehindEnabled;
+
+    @Value("${review.writeBehind.capacity:10000}")
+    private int writeBehindCapacity;
+
+    @Value("${review.writeBehind.flushSize:500}")
+    private int writeBehindFlushSize;
+
+    @Value("${review.writeBehind.flushInterval:100ms}")
+    private Duration writeBehindFlushInterval;
+
+    @Value("${review.writeBehind.retryBackoff:100ms}")
+    private Duration writeBehindRetryBackoff;
+
+    @Value("${review.writeBehind.shutdownTimeout:10s}")
+    private Duration writeBehindShutdownTimeout;
+
+    private ReviewWriteBehindQueue writeBehindQueue;
+
+    @PostConstruct
+    public void startWriteBehind() {
+        if(!writeBehindEnabled)
+            return;
+
+        // Versión simplificada de la expresión "reviews -> writeReviews(reviews)"
+        writeBehindQueue = new ReviewWriteBehindQueue(writeBehindCapacity, writeBehindFlushSize,
+                writeBehindFlushInterval, writeBehindRetryBackoff, this::writeReviews);
+        writeBehindQueue.start();
+    }
+
+    @PreDestroy
+    public void stopWriteBehind() {
+        if(writeBehindQueue != null)
+            writeBehindQueue.close(writeBehindShutdownTimeout);
+    }
+
     public Mono<ServerResponse> addReview(ServerRequest serverRequest) {
+        if(writeBehindQueue != null)
+            return enqueueReview(serverRequest);
+
         // Convertimos el cuerpo de la petición http a un flujo reactivo Mono de tipo Review
         return serverRequest.bodyToMono(Review.class)
                 // Versión simplificada de la expresión "review -> validate(review)"
                 .doOnNext(this::validate)
+                // Sin versión, Spring Data siempre inserta el documento en lugar de intentar actualizarlo.
+                .doOnNext(review -> review.setVersion(null))
+                // MongoDB guarda las fechas con precisión de milisegundos.
+                .doOnNext(review -> review.setCreatedAt(Instant.now().truncatedTo(ChronoUnit.MILLIS)))
                 // Versión simplificada de la expresión "review -> reviewRepository.save(review)"
                 .flatMap(reviewRepository::save)
-                // Versión simplificada de la expresión "savedReview -> ServerResponse.status(HttpStatus.CREATED).bodyValue(savedReview)"
-                .flatMap(ServerResponse.status(HttpStatus.CREATED)::bodyValue);
+                .flatMap(savedReview -> reviewStatsRepository.addRating(savedReview.getMovieInfoId(),
+                        savedReview.getRating()).thenReturn(savedReview))
+                .flatMap(savedReview -> withETag(ServerResponse.status(HttpStatus.CREATED), savedReview));
+    }
+
+    // En el modo "write-behind" la review se valida y se añade a la cola de reviews pendientes de escribir, y se
+    // responde con el código 202 y el id que tendrá la review, sin esperar a MongoDB. La review aparece en el listado y
+    // en las estadísticas cuando se escribe la cola(cada "flushInterval"). Si la cola está llena, se responde con el
+    // código 429 para que el cliente lo vuelva a intentar más tarde.
+    // El id siempre lo asigna el servicio. Con un id del cliente que ya existiera, la review se perdería después de
+    // haber respondido con el código 202.
+    private Mono<ServerResponse> enqueueReview(ServerRequest serverRequest) {
+        return serverRequest.bodyToMono(Review.class)
+                // Versión simplificada de la expresión "review -> validate(review)"
+                .doOnNext(this::validate)
+                .doOnNext(review -> {
+                    if(review.getReviewId() != null)
+                        throw new ReviewDataException("The reviewId must not be present, it is assigned by the service");
+                })
+                .flatMap(review -> {
+                    var reviewId = new ObjectId().toHexString();
+                    var createdAt = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+                    var queuedReview = new Review(reviewId, review.getMovieInfoId(), review.getComment(),
+                            review.getRating(), null, createdAt);
+
+                    // La review de la cola se modifica al escribirla, así que respondemos con una copia.
+                    if(!writeBehindQueue.offer(queuedReview))
+                        return Mono.error(new ReviewTooManyRequestsException(
+                                "Too many reviews pending to be written, try again later"));
+
+                    return ServerResponse.accepted()
+                            .bodyValue(new Review(reviewId, review.getMovieInfoId(), review.getComment(),
+                                    review.getRating(), null, createdAt));
+                });
+    }
+
+    // Escribe un lote de reviews de la cola del modo "write-behind". Las estadísticas se actualizan una sola vez por
+    // review: si la escritura falla sin resultado por documento(por ejemplo, por un "timeout"), no se ha contado
+    // ninguna review del lote y la cola lo reintenta. Las reviews que se llegaron a insertar en el intento anterior
+    // aparecen ahora como duplicadas y se cuentan en este intento. Como los ids los genera el servicio, una review
+    // duplicada de la cola solo puede venir de un intento anterior del mismo lote.
+    private Mono<Void> writeReviews(List<Review> reviews) {
+        return reviewRepository.insertAllUnordered(reviews)
+                .flatMap(writeErrors -> {
+                    var createdReviews = new ArrayList<Review>();
+
+                    for(var i = 0; i < reviews.size(); i++) {
+                        var writeError = writeErrors.get(i);
+
+                        if(writeError == null || writeError.getCode() == DUPLICATE_KEY_ERROR_CODE)
+                            createdReviews.add(reviews.get(i));
+                        else
+                            log.error("Exception caught while writing the queued review {}: {}",
+                                    reviews.get(i).getReviewId(), writeError.getMessage());
+                    }
+
+                    return addRatings(createdReviews);
+                });
+    }
+
+    // Carga masiva de reviews. Acepta una review por línea("application/x-ndjson") o un array JSON y devuelve el
+    // resultado de cada una de ellas en el mismo orden y a medida que se escriben. Las reviews se agrupan en lotes que
+    // se cierran al llegar a "batchSize" reviews o como mucho "batchMaxWait" después de la primera review del lote,
+    // así que los clientes que envían despacio también reciben sus resultados. Cada lote se inserta con una única
+    // operación desordenada. Las reviews que no son válidas no impiden insertar el resto, por eso la respuesta siempre
+    // tiene el código 200.
+    public Mono<ServerResponse> addReviews(ServerRequest serverRequest) {
+        var results = getBatches(serverRequest.bodyToFlux(Review.class).index())
+                .flatMapSequential(this::addReviewsBatch, batchConcurrency);
+
+        return ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(results, ReviewBatchResult.class);
+    }
+
+    // No usamos "bufferTimeout" porque en esta versión de Reactor falla si vence el tiempo del lote cuando no se ha
+    // pedido ningún lote más(por ejemplo, mientras se escriben "batchConcurrency" lotes). En su lugar mezclamos las
+    // reviews con una marca cada "batchMaxWait" y cerramos el lote al llegar a "batchSize" reviews o al recibir una
+    // marca. Si no se pide ningún lote más, las marcas se descartan y se dejan de leer reviews de la petición hasta que
+    // termine alguna escritura.
+    private Flux<List<Tuple2<Long, Review>>> getBatches(Flux<Tuple2<Long, Review>> reviews) {
+        var ticks = Flux.interval(batchMaxWait)
+                .onBackpressureDrop()
+                .map(tick -> FLUSH);
+        var batchCount = new AtomicInteger();
+
+        return Flux.merge(reviews.concatWith(Mono.just(END)), ticks)
+                .takeUntil(item -> item == END)
+                .bufferUntil(item -> {
+                    if(item != FLUSH && item != END && batchCount.incrementAndGet() < batchSize)
+                        return false;
+
+                    batchCount.set(0);
+                    return true;
+                })
+                .map(batch -> batch.stream()
+                        .filter(item -> item != FLUSH && item != END)
+                        .collect(Collectors.toList()))
+                .filter(batch -> !batch.isEmpty());
+    }
+
+    private Flux<ReviewBatchResult> addReviewsBatch(List<Tuple2<Long, Review>> batch) {
+        var results = new ReviewBatchResult[batch.size()];
+        var validReviews = new ArrayList<Review>();
+        var validPositions = new ArrayList<Integer>();
+        var createdAt = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+
+        for(var i = 0; i < batch.size(); i++) {
+            var review = batch.get(i).getT2();
+            var errorMessages = getErrorMessages(review);
+
+            if(errorMessages == null) {
+                review.setCreatedAt(createdAt);
+                validReviews.add(review);
+                validPositions.add(i);
+            } else
+                results[i] = new ReviewBatchResult(batch.get(i).getT1(), ReviewBatchResult.Status.INVALID, null,
+                        errorMessages);
+        }
+
+        if(validReviews.isEmpty())
+            return Flux.fromArray(results);
+
+        return reviewRepository.insertAllUnordered(validReviews)
+                .flatMap(writeErrors -> {
+                    var createdReviews = new ArrayList<Review>();
+
+                    for(var i = 0; i < validPositions.size(); i++) {
+                        var position = validPositions.get(i);
+                        var index = batch.get(position).getT1();
+                        var writeError = writeErrors.get(i);
+
+                        if(writeError == null) {
+                            createdReviews.add(validReviews.get(i));
+                            results[position] = new ReviewBatchResult(index, ReviewBatchResult.Status.CREATED,
+                                    validReviews.get(i).getReviewId(), null);
+                        }
+                        else if(writeError.getCode() == DUPLICATE_KEY_ERROR_CODE)
+                            results[position] = new ReviewBatchResult(index, ReviewBatchResult.Status.DUPLICATE, null,
+                                    "A review with the same id already exists");
+                        else
+                            results[position] = new ReviewBatchResult(index, ReviewBatchResult.Status.FAILED, null,
+                                    writeError.getMessage());
+                    }
+
+                    return addRatings(createdReviews);
+                })
+                // Si falla la operación completa, todas las reviews válidas del lote se marcan como fallidas.
+                .onErrorResume(ex -> {
+                    validPositions.forEach(position -> results[position] = new ReviewBatchResult(
+                            batch.get(position).getT1(), ReviewBatchResult.Status.FAILED, null, ex.getMessage()));
+
+                    return Mono.empty();
+                })
+                .thenMany(Flux.defer(() -> Flux.fromArray(results)));
+    }
+
+    // Una única actualización de las estadísticas por cada película del lote. Las reviews ya están insertadas, así que
+    // si falla la actualización no se marcan como fallidas.
+    private Mono<Void> addRatings(List<Review> reviews) {
+        var ratingsByMovieInfoId = reviews.stream()
+                .filter(review -> review.getRating() != null)
+                .collect(Collectors.groupingBy(Review::getMovieInfoId,
+                        Collectors.mapping(Review::getRating, Collectors.toList())));
+
+        return Flux.fromIterable(ratingsByMovieInfoId.entrySet())
+                .flatMap(entry -> reviewStatsRepository.addRatings(entry.getKey(), entry.getValue()))
+                .onErrorResume(ex -> {
+                    log.error("Exception caught while updating the review stats: {}", ex.getMessage(), ex);
+                    return Mono.empty();
+                })
+                .then();
     }
 
+    public Mono<ServerResponse> getReviewById(ServerRequest serverRequest) {
+        var reviewId = serverRequest.pathVariable("id");
+
+        return reviewRepository.findById(reviewId)
+                .switchIfEmpty(Mono.error(new ReviewNotFoundException("Review not found for the given id " + reviewId)))
+                .flatMap(review -> withETag(ServerResponse.ok(), review));
+    }
+
+    // El listado se devuelve por páginas ordenadas por las reviews más recientes(por defecto) o por las mejor puntuadas
+    // (Por ejemplo: "/v1/reviews?movie-info-id=1&sort=rating&limit=10"). Si existe una página siguiente, la cabecera
+    // "X-Next-Cursor" contiene el cursor que hay que enviar para pedirla(Por ejemplo: "...&cursor=bmV3ZXN0fDE2OTd8YWJj").
+    // Si se indican varios ids(Por ejemplo: "/v1/reviews?movie-info-id=1&movie-info-id=2"), se recuperan las reviews de
+    // todas esas películas con una única consulta.
     public Mono<ServerResponse> getReviews(ServerRequest serverRequest) {
+        var movieInfoIds = getMovieInfoIds(serverRequest);
+        var sort = ReviewSort.parse(serverRequest.queryParam("sort").orElse(null));
+
+        // Los clientes que aceptan "application/x-ndjson" reciben todas las reviews sin paginar, una review por línea,
+        // a medida que las va devolviendo el cursor de MongoDB. El método "limitRate" pide las reviews por lotes, así
+        // que si el cliente lee despacio, se dejan de pedir reviews a MongoDB en lugar de acumularlas en memoria.
+        if(acceptsNdjson(serverRequest))
+            return ServerResponse.ok()
+                    .contentType(MediaType.APPLICATION_NDJSON)
+                    .body(reviewRepository.findAllSorted(movieInfoIds, sort).limitRate(streamLimitRate), Review.class);
+
+        var limit = getIntQueryParam(serverRequest, "limit", defaultLimit);
+
+        if(limit < 1)
+            return Mono.error(new ReviewDataException("The limit must be a positive value"));
+
+        var pageSize = Math.min(limit, maxLimit);
+        var cursor = serverRequest.queryParam("cursor")
+                .map(value -> ReviewCursor.decode(value, sort))
+                .orElse(null);
+
+        // Pedimos una review más que el tamaño de la página para saber si existe una página siguiente sin tener que
+        // hacer otra consulta.
+        return reviewRepository.findPage(movieInfoIds, sort, cursor, pageSize + 1)
+                .collectList()
+                .flatMap(reviews -> {
+                    var responseBuilder = ServerResponse.ok();
+
+                    if(reviews.size() <= pageSize)
+                        return responseBuilder.bodyValue(reviews);
+
+                    var page = reviews.subList(0, pageSize);
+
+                    return responseBuilder.header(NEXT_CURSOR_HEADER,
+                                    ReviewCursor.of(sort, page.get(pageSize - 1)).encode())
+                            .bodyValue(page);
+                });
+    }
+
+    // Reviews de varias películas agrupadas por el id de la película(Por ejemplo:
+    // "/v1/reviews/grouped?movie-info-id=1&movie-info-id=2&limit-per-movie=5"). Todas las películas pedidas aparecen en
+    // la respuesta, en el mismo orden, aunque no tengan reviews. Las reviews de cada película se ordenan igual que en el
+    // listado. Sin "limit-per-movie" se recuperan todas con una única consulta "$in". Con "limit-per-movie" se hace una
+    // única agregación que recorta las reviews de cada película en MongoDB, así que solo se envían las primeras reviews
+    // de cada película aunque una de ellas tenga miles de reviews.
+    public Mono<ServerResponse> getGroupedReviews(ServerRequest serverRequest) {
+        var movieInfoIds = getMovieInfoIds(serverRequest);
+
+        if(movieInfoIds == null)
+            return Mono.error(new ReviewDataException("The movie-info-id query param must be present"));
+
+        if(movieInfoIds.size() > maxLimit)
+            return Mono.error(new ReviewDataException("The number of movie-info-id must not be greater than "
+                    + maxLimit));
+
+        var sort = ReviewSort.parse(serverRequest.queryParam("sort").orElse(null));
+        var limitPerMovie = getIntQueryParam(serverRequest, "limit-per-movie", Integer.MAX_VALUE);
+
+        if(limitPerMovie < 1)
+            return Mono.error(new ReviewDataException("The limit-per-movie must be a positive value"));
+
+        var reviews = limitPerMovie == Integer.MAX_VALUE
+                ? reviewRepository.findAllSorted(movieInfoIds, sort)
+                : reviewRepository.findFirstPerMovie(movieInfoIds, sort, limitPerMovie);
+
+        return reviews
+                .collect(() -> {
+                    var reviewsByMovieInfoId = new LinkedHashMap<String, List<Review>>();
+                    movieInfoIds.forEach(id -> reviewsByMovieInfoId.put(String.valueOf(id), new ArrayList<>()));
+
+                    return reviewsByMovieInfoId;
+                }, (reviewsByMovieInfoId, review) -> reviewsByMovieInfoId.get(String.valueOf(review.getMovieInfoId()))
+                        .add(review))
+                .flatMap(reviewsByMovieInfoId -> ServerResponse.ok().bodyValue(reviewsByMovieInfoId));
+    }
+
+    // Estadísticas de las puntuaciones de una película(Por ejemplo: "/v1/reviews/stats?movie-info-id=1"). Se leen del
+    // documento que se mantiene actualizado con cada review, sin recorrer las reviews de la película.
+    public Mono<ServerResponse> getReviewStats(ServerRequest serverRequest) {
         var movieInfoId = serverRequest.queryParam("movie-info-id");
 
-        if(movieInfoId.isPresent()) {
-            return ServerResponse.ok().body(reviewRepository.findAllByMovieInfoId(Long.valueOf(movieInfoId.get())),
-                    Review.class);
-        }
-        else
-            return ServerResponse.ok().body(reviewRepository.findAll(), Review.class);
+        if(movieInfoId.isEmpty())
+            return Mono.error(new ReviewDataException("The movie-info-id query param must be present"));
+
+        var id = parseNumber("movie-info-id", movieInfoId.get(), Long::valueOf);
+
+        return reviewStatsRepository.findById(id)
+                .defaultIfEmpty(new ReviewStats(id))
+                .flatMap(reviewStats -> ServerResponse.ok().bodyValue(reviewStats));
     }
 
+    // Si la petición incluye la cabecera "If-Match" con el "ETag" de la review, solo se modifica si nadie la ha
+    // modificado desde entonces. La escritura también comprueba la versión leída, así que tampoco se pierden las
+    // modificaciones que se hagan entre la lectura y la escritura.
     public Mono<ServerResponse> uptadeReview(ServerRequest serverRequest) {
         var reviewId = serverRequest.pathVariable("id");
+        var ifMatch = serverRequest.headers().firstHeader(HttpHeaders.IF_MATCH);
 
         return reviewRepository.findById(reviewId)
                 // Una manera
                 .switchIfEmpty(Mono.error(new ReviewNotFoundException("Review not found for the given id " + reviewId)))
+                .doOnNext(existingReview -> checkVersion(existingReview, ifMatch))
                 .flatMap(existingReview -> serverRequest.bodyToMono(Review.class)
-                        .map(review -> {
-                            existingReview.setComment(review.getComment());
-                            existingReview.setRating(review.getRating());
-
-                            return existingReview;
-                        })
-                        // Versión simplificada de la expresión "review -> reviewRepository.save(review)"
-                        .flatMap(reviewRepository::save)
-                        // Versión simplificada de la expresión "updatedReview -> ServerResponse.ok().bodyValue(updatedReview)"
-                        .flatMap(ServerResponse.ok()::bodyValue)
-                );
+                        .flatMap(review -> reviewRepository.updateContent(reviewId, existingReview.getVersion(),
+                                        review.getComment(), review.getRating())
+                                .switchIfEmpty(Mono.error(new ReviewPreconditionFailedException(
+                                        "The review has been modified by another request"))))
+                        // Gracias a la versión, solo la petición que ha modificado la review actualiza las
+                        // estadísticas con la puntuación anterior.
+                        .flatMap(updatedReview -> reviewStatsRepository.replaceRating(
+                                        updatedReview.getMovieInfoId(), existingReview.getRating(),
+                                        updatedReview.getRating())
+                                .thenReturn(updatedReview))
+                        .flatMap(updatedReview -> withETag(ServerResponse.ok(), updatedReview)));
                 // Otra manera
                 //.switchIfEmpty(ServerResponse.notFound().build());
     }
@@ -70,23 +442,93 @@ public class ReviewHandler {
     public Mono<ServerResponse> deleteReview(ServerRequest serverRequest) {
         var reviewId = serverRequest.pathVariable("id");
 
-        return reviewRepository.deleteById(reviewId)
+        // Si dos peticiones eliminan la misma review a la vez, solo una de ellas la recibe, así que sus estadísticas se
+        // actualizan una única vez.
+        return reviewRepository.deleteByReviewId(reviewId)
+                .flatMap(deletedReview -> reviewStatsRepository.removeRating(deletedReview.getMovieInfoId(),
+                        deletedReview.getRating()))
                 .then(ServerResponse.noContent().build());
     }
 
+    // El "ETag" de una review es su versión. Las reviews guardadas antes de añadir la versión no tienen "ETag" hasta
+    // que se modifican por primera vez.
+    private static Mono<ServerResponse> withETag(ServerResponse.BodyBuilder bodyBuilder, Review review) {
+        if(review.getVersion() != null)
+            bodyBuilder.eTag(String.valueOf(review.getVersion()));
+
+        return bodyBuilder.bodyValue(review);
+    }
+
+    // Comprueba que la versión de la review coincide con la cabecera "If-Match"(Por ejemplo: "3"). Sin cabecera o con
+    // el valor "*" no se comprueba la versión.
+    private static void checkVersion(Review review, String ifMatch) {
+        if(ifMatch == null || ifMatch.trim().equals("*"))
+            return;
+
+        var eTag = ifMatch.trim();
+
+        if(eTag.startsWith("W/"))
+            eTag = eTag.substring(2);
+
+        if(!eTag.replace("\"", "").equals(String.valueOf(review.getVersion())))
+            throw new ReviewPreconditionFailedException("The review has been modified by another request");
+    }
+
+    // Ids de las películas del filtro "movie-info-id" o null si no se filtra por película.
+    private static List<Long> getMovieInfoIds(ServerRequest serverRequest) {
+        var movieInfoIds = serverRequest.queryParams().get("movie-info-id");
+
+        if(movieInfoIds == null || movieInfoIds.isEmpty())
+            return null;
+
+        return movieInfoIds.stream()
+                .map(id -> parseNumber("movie-info-id", id, Long::valueOf))
+                .collect(Collectors.toList());
+    }
+
+    // Valor del query param o el valor por defecto si no está presente.
+    private static int getIntQueryParam(ServerRequest serverRequest, String name, int defaultValue) {
+        return serverRequest.queryParam(name)
+                .map(value -> parseNumber(name, value, Integer::valueOf))
+                .orElse(defaultValue);
+    }
+
+    // Un query param que no es un número es un error del cliente(400) y no del servidor(500).
+    private static <T> T parseNumber(String name, String value, Function<String, T> parser) {
+        try {
+            return parser.apply(value);
+        } catch(NumberFormatException ex) {
+            throw new ReviewDataException("The " + name + " query param is not a valid number: " + value);
+        }
+    }
+
+    // No basta con que el tipo sea compatible, porque "*/*" también es compatible con "application/x-ndjson" y los
+    // clientes que no indican la cabecera "Accept" deben recibir el listado paginado.
+    private static boolean acceptsNdjson(ServerRequest serverRequest) {
+        return serverRequest.headers().accept().stream()
+                .anyMatch(mediaType -> mediaType.equalsTypeAndSubtype(MediaType.APPLICATION_NDJSON));
+    }
+
     private void validate(Review review) {
+        var errorMessages = getErrorMessages(review);
+
+        if(errorMessages != null)
+            throw new ReviewDataException(errorMessages);
+    }
+
+    // Mensajes de error de la validación de la review o null si es válida.
+    private String getErrorMessages(Review review) {
         var constraintViolations = validator.validate(review);
 
-        if(!constraintViolations.isEmpty()) {
-            log.info("ContraintViolations: {}", constraintViolations);
+        if(constraintViolations.isEmpty())
+            return null;
 
-            var errorMessages = constraintViolations.stream()
-                    // Versión simplificada de la expresión "constraintViolation -> constraintViolation.getMessage()"
-                    .map(ConstraintViolation::getMessage)
-                    .sorted()
-                    .collect(Collectors.joining(","));
+        log.info("ContraintViolations: {}", constraintViolations);
 
-            throw new ReviewDataException(errorMessages);
-        }
+        return constraintViolations.stream()
+                // Versión simplificada de la expresión "constraintViolation -> constraintViolation.getMessage()"
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining(","));
     }
 }
@@ -3,7 +3,10 @@ package com.reactivespring.repository;
 import com.reactivespring.domain.Review;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-public interface ReviewRepository extends ReactiveMongoRepository<Review, String> {
+public interface ReviewRepository extends ReactiveMongoRepository<Review, String>, ReviewRepositoryCustom {
     Flux<Review> findAllByMovieInfoId(Long movieInfoId);
+    // Elimina la review y la devuelve(findAndRemove) para poder actualizar las estadísticas de su película.
+    Mono<Review> deleteByReviewId(String reviewId);
 }
@@ -0,0 +1,24 @@
+package com.reactivespring.repository;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewCursor;
+import com.reactivespring.domain.ReviewSort;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public interface ReviewRepositoryCustom {
+    Flux<Review> findPage(Collection<Long> movieInfoIds, ReviewSort sort, ReviewCursor after, int limit);
+    Flux<Review> findAllSorted(Collection<Long> movieInfoIds, ReviewSort sort);
+    Flux<Review> findFirstPerMovie(Collection<Long> movieInfoIds, ReviewSort sort, int limitPerMovie);
+    Mono<Map<Integer, BulkWriteError>> insertAllUnordered(List<Review> reviews);
+
+    // Asigna el comentario y la puntuación de la review e incrementa su versión solo si la review sigue teniendo la
+    // versión indicada(null si la review no tiene versión). Devuelve la review modificada. Si no se modifica ninguna
+    // review, el flujo termina sin emitir ningún valor.
+    Mono<Review> updateContent(String reviewId, Long version, String comment, Double rating);
+}
@@ -0,0 +1,170 @@
+package com.reactivespring.repository;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewCursor;
+import com.reactivespring.domain.ReviewSort;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@RequiredArgsConstructor
+public class ReviewRepositoryCustomImpl implements ReviewRepositoryCustom {
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    // Paginación por clave("keyset"): en lugar de saltar las reviews de las páginas anteriores, se buscan las reviews
+    // que van detrás de la última review devuelta. Con los índices compuestos de Review el coste de cada página es el
+    // mismo sin importar cuántas reviews tenga la película ni lo lejos que esté la página.
+    @Override
+    public Flux<Review> findPage(Collection<Long> movieInfoIds, ReviewSort sort, ReviewCursor after, int limit) {
+        return reactiveMongoTemplate.find(getPageQuery(movieInfoIds, sort, after, limit), Review.class);
+    }
+
+    @Override
+    public Flux<Review> findAllSorted(Collection<Long> movieInfoIds, ReviewSort sort) {
+        return reactiveMongoTemplate.find(getQuery(movieInfoIds, sort), Review.class);
+    }
+
+    // Una única agregación para todas las películas: las reviews se leen ya ordenadas del índice compuesto de la
+    // película y el orden, se agrupan por película y de cada grupo solo se devuelven las primeras "limitPerMovie".
+    // MongoDB agrupa todas las reviews de las películas antes de recortarlas, así que permitimos que use el disco si el
+    // grupo no cabe en memoria.
+    @Override
+    public Flux<Review> findFirstPerMovie(Collection<Long> movieInfoIds, ReviewSort sort, int limitPerMovie) {
+        return reactiveMongoTemplate.aggregate(getFirstPerMovieAggregation(movieInfoIds, sort, limitPerMovie),
+                Review.class);
+    }
+
+    // Inserta todas las reviews con una única operación "insertMany" desordenada: MongoDB puede escribirlas en cualquier
+    // orden y un error en una review no impide insertar el resto. Devuelve los errores de escritura según la posición
+    // de la review en la lista(vacío si no hay errores).
+    @Override
+    public Mono<Map<Integer, BulkWriteError>> insertAllUnordered(List<Review> reviews) {
+        var documents = reviews.stream()
+                .map(review -> {
+                    // Misma versión inicial que asigna el método "save" de Spring Data.
+                    review.setVersion(0L);
+
+                    var document = new Document();
+                    reactiveMongoTemplate.getConverter().write(review, document);
+
+                    return document;
+                })
+                .collect(Collectors.toList());
+
+        return reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(Review.class))
+                .flatMap(collection -> Mono.from(collection.insertMany(documents, new InsertManyOptions().ordered(false))))
+                .map(insertManyResult -> Map.<Integer, BulkWriteError>of())
+                .onErrorResume(MongoBulkWriteException.class, ex -> Mono.just(ex.getWriteErrors().stream()
+                        // Versión simplificada de la expresión "bulkWriteError -> bulkWriteError.getIndex()"
+                        .collect(Collectors.toMap(BulkWriteError::getIndex, Function.identity()))))
+                .doOnNext(writeErrors -> {
+                    // El driver asigna el id a los documentos que no lo tienen antes de insertarlos.
+                    for(var i = 0; i < documents.size(); i++) {
+                        if(!writeErrors.containsKey(i))
+                            reviews.get(i).setReviewId(documents.get(i).get("_id").toString());
+                    }
+                });
+    }
+
+    // Una única operación "findAndModify": la comprobación de la versión y la escritura son atómicas. No usamos el
+    // método "save" porque, con la versión a null, Spring Data considera que la review es nueva y la inserta, y MongoDB
+    // la rechaza porque ya existe una review con ese id. Las reviews guardadas antes de añadir la versión no tienen el
+    // campo(el filtro "version: null" también las encuentra) y el operador "$inc" lo crea con el valor 1.
+    @Override
+    public Mono<Review> updateContent(String reviewId, Long version, String comment, Double rating) {
+        var query = Query.query(Criteria.where("reviewId").is(reviewId).and("version").is(version));
+
+        var update = new Update().inc("version", 1L);
+        setOrUnset(update, "comment", comment);
+        setOrUnset(update, "rating", rating);
+
+        return reactiveMongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true),
+                Review.class);
+    }
+
+    // Las consultas se construyen aparte para poder comprobar su plan de ejecución en los tests.
+    static Query getPageQuery(Collection<Long> movieInfoIds, ReviewSort sort, ReviewCursor after, int limit) {
+        var query = getQuery(movieInfoIds, sort);
+
+        if(after != null)
+            query.addCriteria(after(sort, after));
+
+        return query.limit(limit);
+    }
+
+    static TypedAggregation<Review> getFirstPerMovieAggregation(Collection<Long> movieInfoIds, ReviewSort sort,
+                                                                int limitPerMovie) {
+        return Aggregation.newAggregation(Review.class,
+                        Aggregation.match(Criteria.where("movieInfoId").in(movieInfoIds)),
+                        Aggregation.sort(Sort.by(Sort.Direction.ASC, "movieInfoId")
+                                .and(Sort.by(Sort.Direction.DESC, sort.getField(), "reviewId"))),
+                        Aggregation.group("movieInfoId").push(Aggregation.ROOT).as("reviews"),
+                        Aggregation.project().and("reviews").slice(limitPerMovie).as("reviews"),
+                        Aggregation.unwind("reviews"),
+                        Aggregation.replaceRoot("reviews"))
+                .withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+    }
+
+    static Query getQuery(Collection<Long> movieInfoIds, ReviewSort sort) {
+        var query = new Query();
+
+        if(movieInfoIds != null)
+            query.addCriteria(Criteria.where("movieInfoId").in(movieInfoIds));
+
+        return query.with(Sort.by(Sort.Direction.DESC, sort.getField(), "reviewId"));
+    }
+
+    // Igual que el método "save", los campos sin valor no se guardan en el documento.
+    private static void setOrUnset(Update update, String field, Object value) {
+        if(value == null)
+            update.unset(field);
+        else
+            update.set(field, value);
+    }
+
+    // En orden descendente MongoDB devuelve las reviews sin valor(null) al final, así que detrás de una review con
+    // valor van las que tienen un valor menor, las que tienen el mismo valor y un id menor y las que no tienen valor.
+    private static Criteria after(ReviewSort sort, ReviewCursor cursor) {
+        var field = sort.getField();
+
+        if(cursor.getValue() == null)
+            return new Criteria().andOperator(Criteria.where(field).is(null), beforeReviewId(cursor.getReviewId()));
+
+        return new Criteria().orOperator(Criteria.where(field).lt(cursor.getValue()),
+                new Criteria().andOperator(Criteria.where(field).is(cursor.getValue()),
+                        beforeReviewId(cursor.getReviewId())),
+                Criteria.where(field).is(null));
+    }
+
+    // Los ids generados por MongoDB se guardan como ObjectId y el resto como String. En orden descendente MongoDB
+    // devuelve primero los ObjectId y después los String, pero el operador "$lt" solo compara valores del mismo tipo.
+    // Por eso, después de un id de tipo ObjectId también hay que incluir todos los String.
+    private static Criteria beforeReviewId(String reviewId) {
+        if(ObjectId.isValid(reviewId))
+            return new Criteria().orOperator(Criteria.where("reviewId").lt(new ObjectId(reviewId)),
+                    Criteria.where("reviewId").type(JsonSchemaObject.Type.stringType()));
+
+        return Criteria.where("reviewId").lt(reviewId);
+    }
+}
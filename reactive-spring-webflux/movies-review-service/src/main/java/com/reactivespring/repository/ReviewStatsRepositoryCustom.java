@@ -0,0 +1,13 @@
+package com.reactivespring.repository;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+public interface ReviewStatsRepositoryCustom {
+    Mono<Void> addRating(Long movieInfoId, Double rating);
+    Mono<Void> addRatings(Long movieInfoId, Collection<Double> ratings);
+    Mono<Void> removeRating(Long movieInfoId, Double rating);
+    Mono<Void> replaceRating(Long movieInfoId, Double oldRating, Double newRating);
+    Mono<Long> seedMissingStats();
+}
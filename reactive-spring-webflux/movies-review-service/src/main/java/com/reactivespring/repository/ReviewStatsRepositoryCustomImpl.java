@@ -0,0 +1,286 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewStats;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+// Cada cambio se aplica con una única actualización atómica de MongoDB($inc, $min y $max), sin leer antes el documento,
+// así que las escrituras concurrentes de reviews de la misma película no se pisan.
+// Los operadores $min y $max no sirven para quitar una puntuación: si la puntuación que se quita era la mínima o la
+// máxima, se buscan de nuevo en las reviews de la película(con el índice de "movieInfoId"). Entre la búsqueda y la
+// escritura otra petición puede cambiar las estadísticas, así que la escritura solo se aplica si la revisión de las
+// estadísticas no ha cambiado(cada actualización la incrementa). Si ha cambiado, se vuelven a buscar.
+// Las reviews guardadas antes de añadir las estadísticas no están contadas: al arrancar se calculan las estadísticas
+// que faltan a partir de las reviews. Quitar una puntuación solo resta si las estadísticas la incluyen. Si no existen o
+// quedarían en negativo, se calculan de nuevo con todas las reviews de la película.
+
+@RequiredArgsConstructor
+public class ReviewStatsRepositoryCustomImpl implements ReviewStatsRepositoryCustom {
+    private static final int MAX_REFRESH_ATTEMPTS = 5;
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Override
+    public Mono<Void> addRating(Long movieInfoId, Double rating) {
+        if(rating == null)
+            return Mono.empty();
+
+        var update = new Update()
+                .inc("count", 1L)
+                .inc("ratingSum", rating)
+                .inc(histogramField(rating), 1L)
+                .min("minRating", rating)
+                .max("maxRating", rating)
+                .inc("revision", 1L);
+
+        // Si todavía no existen las estadísticas de la película, se crean.
+        return reactiveMongoTemplate.upsert(byMovieInfoId(movieInfoId), update, ReviewStats.class).then();
+    }
+
+    // Añade varias puntuaciones de la misma película con una única actualización(por ejemplo, las de una carga masiva).
+    @Override
+    public Mono<Void> addRatings(Long movieInfoId, Collection<Double> ratings) {
+        var statistics = ratings.stream()
+                .filter(Objects::nonNull)
+                .mapToDouble(Double::doubleValue)
+                .summaryStatistics();
+
+        if(statistics.getCount() == 0)
+            return Mono.empty();
+
+        var update = new Update()
+                .inc("count", statistics.getCount())
+                .inc("ratingSum", statistics.getSum())
+                .min("minRating", statistics.getMin())
+                .max("maxRating", statistics.getMax())
+                .inc("revision", 1L);
+
+        ratings.stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.groupingBy(ReviewStatsRepositoryCustomImpl::histogramField, Collectors.counting()))
+                // Versión simplificada de la expresión "(field, count) -> update.inc(field, count)"
+                .forEach(update::inc);
+
+        return reactiveMongoTemplate.upsert(byMovieInfoId(movieInfoId), update, ReviewStats.class).then();
+    }
+
+    @Override
+    public Mono<Void> removeRating(Long movieInfoId, Double rating) {
+        if(rating == null)
+            return Mono.empty();
+
+        var update = new Update()
+                .inc("count", -1L)
+                .inc("ratingSum", -rating)
+                .inc(histogramField(rating), -1L)
+                .inc("revision", 1L);
+
+        var guard = Criteria.where("count").gte(1L).and(histogramField(rating)).gte(1L);
+
+        return updateAndRefreshBounds(movieInfoId, guard, update, rating);
+    }
+
+    @Override
+    public Mono<Void> replaceRating(Long movieInfoId, Double oldRating, Double newRating) {
+        if(Objects.equals(oldRating, newRating))
+            return Mono.empty();
+
+        if(oldRating == null)
+            return addRating(movieInfoId, newRating);
+
+        if(newRating == null)
+            return removeRating(movieInfoId, oldRating);
+
+        var update = new Update()
+                .inc("ratingSum", newRating - oldRating)
+                .min("minRating", newRating)
+                .max("maxRating", newRating)
+                .inc("revision", 1L);
+
+        var guard = Criteria.where("count").gte(1L);
+
+        if(!histogramField(oldRating).equals(histogramField(newRating))) {
+            update.inc(histogramField(oldRating), -1L).inc(histogramField(newRating), 1L);
+            guard.and(histogramField(oldRating)).gte(1L);
+        }
+
+        return updateAndRefreshBounds(movieInfoId, guard, update, oldRating);
+    }
+
+    // Calcula las estadísticas de las películas que tienen reviews con puntuación pero no tienen estadísticas. Devuelve
+    // el número de películas cuyas estadísticas se han creado.
+    @Override
+    public Mono<Long> seedMissingStats() {
+        return aggregateStats(Criteria.where("rating").ne(null))
+                .filterWhen(reviewStats -> reactiveMongoTemplate.exists(byMovieInfoId(reviewStats.getMovieInfoId()),
+                        ReviewStats.class).map(exists -> !exists))
+                // Si otra petición ha creado las estadísticas mientras tanto, no incluyen las reviews anteriores.
+                .concatMap(reviewStats -> insertStats(reviewStats)
+                        .filter(inserted -> !inserted)
+                        .flatMap(inserted -> recomputeStats(reviewStats.getMovieInfoId(), 1))
+                        .thenReturn(reviewStats))
+                .count();
+    }
+
+    // La actualización solo se aplica si las estadísticas cumplen la condición "guard"(que incluyen la puntuación que
+    // se quita).
+    private Mono<Void> updateAndRefreshBounds(Long movieInfoId, Criteria guard, Update update, Double removedRating) {
+        return reactiveMongoTemplate.findAndModify(byMovieInfoId(movieInfoId).addCriteria(guard), update,
+                        FindAndModifyOptions.options().returnNew(true), ReviewStats.class)
+                .switchIfEmpty(Mono.defer(() -> recomputeStats(movieInfoId, 1).then(Mono.empty())))
+                .filter(reviewStats -> removedRating.equals(reviewStats.getMinRating())
+                        || removedRating.equals(reviewStats.getMaxRating()))
+                .flatMap(reviewStats -> refreshBounds(movieInfoId, reviewStats.getRevision(), 1));
+    }
+
+    // Vuelve a calcular la puntuación mínima y máxima con las reviews de la película. Sin reviews se eliminan.
+    // Cada reintento significa que otra petición ha actualizado las estadísticas. Después de "MAX_REFRESH_ATTEMPTS"
+    // intentos lo dejamos: como mucho queda la puntuación eliminada como mínima o máxima hasta el siguiente cambio que
+    // las recalcule.
+    private Mono<Void> refreshBounds(Long movieInfoId, long revision, int attempt) {
+        var monoOfMinRating = findBoundRating(movieInfoId, Sort.Direction.ASC);
+        var monoOfMaxRating = findBoundRating(movieInfoId, Sort.Direction.DESC);
+
+        return Mono.zip(monoOfMinRating, monoOfMaxRating)
+                .flatMap(tuple -> {
+                    var update = new Update();
+
+                    tuple.getT1().ifPresentOrElse(minRating -> update.set("minRating", minRating),
+                            () -> update.unset("minRating"));
+                    tuple.getT2().ifPresentOrElse(maxRating -> update.set("maxRating", maxRating),
+                            () -> update.unset("maxRating"));
+
+                    var query = byMovieInfoId(movieInfoId).addCriteria(Criteria.where("revision").is(revision));
+
+                    return reactiveMongoTemplate.updateFirst(query, update, ReviewStats.class);
+                })
+                .filter(updateResult -> updateResult.getMatchedCount() == 0 && attempt < MAX_REFRESH_ATTEMPTS)
+                .flatMap(updateResult -> reactiveMongoTemplate.findById(movieInfoId, ReviewStats.class))
+                .flatMap(reviewStats -> refreshBounds(movieInfoId, reviewStats.getRevision(), attempt + 1));
+    }
+
+    // Vuelve a calcular todas las estadísticas de la película con sus reviews. Igual que al recalcular la puntuación
+    // mínima y máxima, la escritura solo se aplica si la revisión de las estadísticas no ha cambiado desde la lectura.
+    private Mono<Void> recomputeStats(Long movieInfoId, int attempt) {
+        var monoOfRevision = reactiveMongoTemplate.findById(movieInfoId, ReviewStats.class)
+                // Versión simplificada de la expresión "reviewStats -> reviewStats.getRevision()"
+                .map(ReviewStats::getRevision)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty());
+
+        return monoOfRevision
+                .flatMap(revision -> aggregateStats(Criteria.where("movieInfoId").is(movieInfoId)
+                        .and("rating").ne(null))
+                        .next()
+                        .defaultIfEmpty(new ReviewStats(movieInfoId))
+                        .flatMap(reviewStats -> revision.isPresent()
+                                ? replaceStats(reviewStats, revision.get())
+                                : insertStats(reviewStats)))
+                .filter(written -> !written && attempt < MAX_REFRESH_ATTEMPTS)
+                .flatMap(written -> recomputeStats(movieInfoId, attempt + 1));
+    }
+
+    // Devuelve false si otra petición ha creado las estadísticas antes.
+    private Mono<Boolean> insertStats(ReviewStats reviewStats) {
+        return reactiveMongoTemplate.insert(reviewStats)
+                .thenReturn(true)
+                .onErrorResume(DuplicateKeyException.class, ex -> Mono.just(false));
+    }
+
+    // Devuelve false si otra petición ha modificado las estadísticas después de leer la revisión.
+    private Mono<Boolean> replaceStats(ReviewStats reviewStats, long revision) {
+        var query = byMovieInfoId(reviewStats.getMovieInfoId()).addCriteria(Criteria.where("revision").is(revision));
+        var update = new Update()
+                .set("count", reviewStats.getCount())
+                .set("ratingSum", reviewStats.getRatingSum())
+                .set("histogram", reviewStats.getHistogram())
+                .inc("revision", 1L);
+
+        if(reviewStats.getMinRating() != null)
+            update.set("minRating", reviewStats.getMinRating()).set("maxRating", reviewStats.getMaxRating());
+        else
+            update.unset("minRating").unset("maxRating");
+
+        return reactiveMongoTemplate.updateFirst(query, update, ReviewStats.class)
+                .map(updateResult -> updateResult.getMatchedCount() > 0);
+    }
+
+    // Calcula las estadísticas de las reviews que cumplen el criterio con una única agregación: las puntuaciones se
+    // agrupan por película y por rango del histograma, y cada película junta después sus rangos.
+    private Flux<ReviewStats> aggregateStats(Criteria criteria) {
+        var aggregation = Aggregation.newAggregation(
+                Aggregation.match(criteria),
+                Aggregation.project("movieInfoId", "rating")
+                        .and(ArithmeticOperators.Floor.floorValueOf("rating")).as("bucket"),
+                Aggregation.group("movieInfoId", "bucket")
+                        .count().as("count")
+                        .sum("rating").as("ratingSum")
+                        .min("rating").as("minRating")
+                        .max("rating").as("maxRating"));
+
+        return reactiveMongoTemplate.aggregate(aggregation, Review.class, Document.class)
+                .collectMultimap(bucket -> ((Number) bucket.get("_id", Document.class).get("movieInfoId")).longValue())
+                .flatMapIterable(Map::entrySet)
+                .map(entry -> toReviewStats(entry.getKey(), entry.getValue()));
+    }
+
+    private static ReviewStats toReviewStats(Long movieInfoId, Collection<Document> buckets) {
+        var reviewStats = new ReviewStats(movieInfoId);
+
+        buckets.forEach(bucket -> {
+            var count = ((Number) bucket.get("count")).longValue();
+            var minRating = ((Number) bucket.get("minRating")).doubleValue();
+            var maxRating = ((Number) bucket.get("maxRating")).doubleValue();
+
+            reviewStats.setCount(reviewStats.getCount() + count);
+            reviewStats.setRatingSum(reviewStats.getRatingSum() + ((Number) bucket.get("ratingSum")).doubleValue());
+            reviewStats.setMinRating(reviewStats.getMinRating() == null
+                    ? minRating : Math.min(reviewStats.getMinRating(), minRating));
+            reviewStats.setMaxRating(reviewStats.getMaxRating() == null
+                    ? maxRating : Math.max(reviewStats.getMaxRating(), maxRating));
+            reviewStats.getHistogram().put(
+                    String.valueOf(((Number) bucket.get("_id", Document.class).get("bucket")).longValue()), count);
+        });
+
+        return reviewStats;
+    }
+
+    private Mono<Optional<Double>> findBoundRating(Long movieInfoId, Sort.Direction direction) {
+        var query = Query.query(Criteria.where("movieInfoId").is(movieInfoId).and("rating").ne(null))
+                .with(Sort.by(direction, "rating"))
+                .limit(1);
+        query.fields().include("rating");
+
+        return reactiveMongoTemplate.findOne(query, Review.class)
+                // Versión simplificada de la expresión "review -> review.getRating()"
+                .map(Review::getRating)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty());
+    }
+
+    private static Query byMovieInfoId(Long movieInfoId) {
+        return Query.query(Criteria.where("movieInfoId").is(movieInfoId));
+    }
+
+    private static String histogramField(Double rating) {
+        return "histogram." + (long) Math.floor(rating);
+    }
+}
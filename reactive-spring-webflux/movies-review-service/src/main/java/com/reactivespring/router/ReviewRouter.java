@@ -24,7 +24,13 @@ public class ReviewRouter {
                 // Este método "nest" nos permite agrupar endpoints que comparten una misma url
                 .nest(path(REVIEW_BASE_URL), builder ->
                     builder.POST("", reviewHandler::addReview)
+                            .POST("batch", reviewHandler::addReviews)
                             .GET("", reviewHandler::getReviews)
+                            // Deben ir antes de "{id}" para que "stats" y "grouped" no se interpreten como el id de
+                            // una review.
+                            .GET("stats", reviewHandler::getReviewStats)
+                            .GET("grouped", reviewHandler::getGroupedReviews)
+                            .GET("{id}", reviewHandler::getReviewById)
                             .PUT("{id}", reviewHandler::uptadeReview)
                             .DELETE("{id}", reviewHandler::deleteReview)
 
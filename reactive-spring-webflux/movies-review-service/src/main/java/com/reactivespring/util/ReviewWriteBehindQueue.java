@@ -0,0 +1,126 @@
+package com.reactivespring.util;
+
+import com.reactivespring.domain.Review;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+// Cola en memoria y con capacidad limitada de las reviews pendientes de escribir en MongoDB("write-behind"). Las
+// peticiones solo añaden la review a la cola y cada "flushInterval" se escriben todas las reviews pendientes en lotes
+// de como mucho "flushSize" reviews, así que los picos de escrituras no ocupan todas las conexiones con MongoDB.
+// Si la cola está llena, la review se rechaza en lugar de acumularla en memoria. Al cerrar la cola se escriben todas las
+// reviews pendientes. Las reviews de la cola se pierden si el proceso termina de forma abrupta.
+
+@Slf4j
+public class ReviewWriteBehindQueue {
+    private static final int MAX_RETRIES = 3;
+
+    private final BlockingQueue<Review> queue;
+    private final int flushSize;
+    private final Duration flushInterval;
+    private final Duration retryBackoff;
+    private final Function<List<Review>, Mono<Void>> writer;
+
+    // Las peticiones añaden reviews con el bloqueo de lectura(a la vez) y el cierre toma el de escritura, así que
+    // ninguna review entra en la cola después de vaciarla por última vez.
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Sinks.One<Boolean> stop = Sinks.one();
+    private boolean closed;
+    private Mono<Void> flushes;
+
+    public ReviewWriteBehindQueue(int capacity, int flushSize, Duration flushInterval, Duration retryBackoff,
+                                  Function<List<Review>, Mono<Void>> writer) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.flushSize = flushSize;
+        this.flushInterval = flushInterval;
+        this.retryBackoff = retryBackoff;
+        this.writer = writer;
+    }
+
+    public void start() {
+        flushes = Flux.interval(flushInterval)
+                .takeUntilOther(stop.asMono())
+                // Si una escritura tarda más que el intervalo, nos saltamos las siguientes.
+                .onBackpressureDrop()
+                .concatMap(tick -> flush(), 1)
+                .then()
+                .cache();
+
+        flushes.subscribe();
+    }
+
+    // Devuelve false si la cola está llena o cerrada.
+    public boolean offer(Review review) {
+        lock.readLock().lock();
+        try {
+            return !closed && queue.offer(review);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    // Escribe las reviews pendientes lote a lote hasta vaciar la cola.
+    public Mono<Void> flush() {
+        return Mono.fromSupplier(this::nextBatch)
+                .repeat()
+                .takeWhile(batch -> !batch.isEmpty())
+                .concatMap(this::write, 1)
+                .then();
+    }
+
+    // Deja de aceptar reviews, espera a que termine la escritura en curso y escribe las reviews que queden en la cola.
+    public void close(Duration timeout) {
+        lock.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        stop.tryEmitValue(true);
+
+        var pendingReviews = queue.size();
+
+        try {
+            (flushes != null ? flushes.then(flush()) : flush()).block(timeout);
+            log.info("Review queue drained with {} pending reviews", pendingReviews);
+        } catch(RuntimeException ex) {
+            log.error("Exception caught while draining the review queue, {} reviews have not been written: {}",
+                    queue.size(), ex.getMessage(), ex);
+        }
+    }
+
+    private List<Review> nextBatch() {
+        var batch = new ArrayList<Review>(flushSize);
+        queue.drainTo(batch, flushSize);
+
+        return batch;
+    }
+
+    // Los ids se asignan antes de añadir las reviews a la cola, así que si se reintenta un lote del que ya se habían
+    // escrito algunas reviews, no se duplican. El escritor debe tener en cuenta que esas reviews ya existen.
+    private Mono<Void> write(List<Review> batch) {
+        return Mono.defer(() -> writer.apply(batch))
+                .retryWhen(Retry.backoff(MAX_RETRIES, retryBackoff))
+                .onErrorResume(ex -> {
+                    log.error("Exception caught while writing {} queued reviews: {}", batch.size(), ex.getMessage(),
+                            ex);
+                    return Mono.empty();
+                });
+    }
+}
@@ -0,0 +1,169 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewCursor;
+import com.reactivespring.domain.ReviewSort;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.TypeBasedAggregationOperationContext;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+// Comprobamos con el plan de ejecución("explain") que las consultas que construye el repositorio usan los índices y no
+// recorren toda la colección(COLLSCAN).
+
+@ActiveProfiles("test")
+@DataMongoTest
+class ReviewIndexesIntgTest {
+
+    @Autowired
+    ReviewRepository reviewRepository;
+
+    @Autowired
+    MongoMappingContext mongoMappingContext;
+
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @BeforeEach
+    void setUp() {
+        // Spring Data crea los índices al arrancar sin esperar a que terminen, así que nos aseguramos de que existen.
+        var indexOperations = reactiveMongoTemplate.indexOps(Review.class);
+
+        // Versión simplificada de la expresión "indexDefinition -> indexOperations.ensureIndex(indexDefinition)"
+        Flux.fromIterable(new MongoPersistentEntityIndexResolver(mongoMappingContext).resolveIndexFor(Review.class))
+                .concatMap(indexOperations::ensureIndex)
+                .blockLast();
+
+        var reviewList = Arrays.asList(
+                new Review("abc", 1L, "Awesome Movie", 9.0),
+                new Review(null, 1L, "Awesome Movie1", 9.0),
+                new Review(null, 2L, "Excellent Movie", 8.0));
+
+        reviewRepository.saveAll(reviewList).blockLast();
+    }
+
+    @AfterEach
+    void tearDown() {
+        reviewRepository.deleteAll().block();
+    }
+
+    @Test
+    void findAllByMovieInfoIdUsesIndexTest() {
+        assertNoCollectionScan(Query.query(Criteria.where("movieInfoId").is(1L)));
+    }
+
+    @Test
+    void findAllSortedByMovieInfoIdsUsesIndexTest() {
+        assertNoCollectionScan(ReviewRepositoryCustomImpl.getQuery(List.of(1L, 2L), ReviewSort.RATING));
+    }
+
+    @Test
+    void findPageByMovieInfoIdSortedByNewestUsesIndexTest() {
+        assertNoCollectionScanOrSort(ReviewRepositoryCustomImpl.getPageQuery(List.of(1L), ReviewSort.NEWEST, null,
+                21));
+    }
+
+    @Test
+    void findPageByMovieInfoIdSortedByRatingUsesIndexTest() {
+        assertNoCollectionScanOrSort(ReviewRepositoryCustomImpl.getPageQuery(List.of(1L), ReviewSort.RATING, null,
+                21));
+    }
+
+    @Test
+    void findPageSortedByNewestUsesIndexTest() {
+        assertNoCollectionScanOrSort(ReviewRepositoryCustomImpl.getPageQuery(null, ReviewSort.NEWEST, null, 21));
+    }
+
+    // Las páginas siguientes añaden el filtro "$or" del cursor. Después de un ObjectId también se incluyen los String.
+    @Test
+    void findNextPageAfterObjectIdUsesIndexTest() {
+        var cursor = new ReviewCursor(ReviewSort.RATING, 9.0, "000000000000000000000000");
+
+        assertNoCollectionScanOrSort(ReviewRepositoryCustomImpl.getPageQuery(List.of(1L), ReviewSort.RATING, cursor,
+                21));
+    }
+
+    @Test
+    void findNextPageAfterStringIdUsesIndexTest() {
+        var cursor = new ReviewCursor(ReviewSort.NEWEST, Instant.parse("2021-01-01T00:00:00Z"), "abc");
+
+        assertNoCollectionScanOrSort(ReviewRepositoryCustomImpl.getPageQuery(List.of(1L), ReviewSort.NEWEST, cursor,
+                21));
+    }
+
+    @Test
+    void findNextPageAfterReviewWithoutRatingUsesIndexTest() {
+        var cursor = new ReviewCursor(ReviewSort.RATING, null, "abc");
+
+        assertNoCollectionScanOrSort(ReviewRepositoryCustomImpl.getPageQuery(List.of(1L), ReviewSort.RATING, cursor,
+                21));
+    }
+
+    // Las reviews de la agregación se leen del índice de la película y el orden, sin ordenarlas en memoria.
+    @Test
+    void findFirstPerMovieUsesIndexTest() {
+        var aggregation = ReviewRepositoryCustomImpl.getFirstPerMovieAggregation(List.of(1L, 2L), ReviewSort.RATING,
+                5);
+        var context = new TypeBasedAggregationOperationContext(Review.class, mongoMappingContext,
+                new QueryMapper(reactiveMongoTemplate.getConverter()));
+
+        var explain = reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(Review.class))
+                .flatMap(collection -> Mono.from(collection.aggregate(aggregation.toPipeline(context)).explain()))
+                .block();
+
+        assert explain != null;
+
+        assertFalse(explain.toJson().contains("COLLSCAN"), "Collection scan for " + aggregation);
+        assertFalse(explain.toJson().contains("\"SORT\""), "In-memory sort for " + aggregation);
+    }
+
+    private void assertNoCollectionScan(Query query) {
+        var winningPlan = getWinningPlan(query);
+
+        assertFalse(winningPlan.toJson().contains("COLLSCAN"), "Collection scan for " + query);
+    }
+
+    // Además de usar un índice, las reviews deben salir del índice ya ordenadas(sin la etapa SORT en memoria).
+    private void assertNoCollectionScanOrSort(Query query) {
+        var winningPlan = getWinningPlan(query).toJson();
+
+        assertFalse(winningPlan.contains("COLLSCAN"), "Collection scan for " + query);
+        assertFalse(winningPlan.contains("\"SORT\""), "In-memory sort for " + query);
+    }
+
+    // Convertimos la consulta igual que "ReactiveMongoTemplate"(nombres de los campos, ids...) antes de pedir su plan.
+    private Document getWinningPlan(Query query) {
+        var entity = mongoMappingContext.getRequiredPersistentEntity(Review.class);
+        var queryMapper = new QueryMapper(reactiveMongoTemplate.getConverter());
+        var filter = queryMapper.getMappedObject(query.getQueryObject(), entity);
+
+        var explain = reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(Review.class))
+                .flatMap(collection -> Mono.from(collection.find(filter)
+                        .sort(queryMapper.getMappedSort(query.getSortObject(), entity))
+                        .limit(query.getLimit())
+                        .explain()))
+                .block();
+
+        assert explain != null;
+
+        return ((Document) explain.get("queryPlanner")).get("winningPlan", Document.class);
+    }
+}
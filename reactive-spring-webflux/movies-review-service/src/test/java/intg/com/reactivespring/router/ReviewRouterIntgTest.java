@@ -1,16 +1,25 @@
 package com.reactivespring.router;
 
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewBatchResult;
 import com.reactivespring.repository.ReviewRepository;
+import com.reactivespring.repository.ReviewStatsRepository;
+import org.bson.Document;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -26,6 +35,12 @@ class ReviewRouterIntgTest {
     @Autowired
     ReviewRepository reviewRepository;
 
+    @Autowired
+    ReviewStatsRepository reviewStatsRepository;
+
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
     @BeforeEach
     void setUp() {
         var reviewList = Arrays.asList(
@@ -39,6 +54,7 @@ class ReviewRouterIntgTest {
     @AfterEach
     void tearDown() {
         reviewRepository.deleteAll().block();
+        reviewStatsRepository.deleteAll().block();
     }
 
     @Test
@@ -62,6 +78,47 @@ class ReviewRouterIntgTest {
                 });
     }
 
+    @Test
+    void addReviewsTest() {
+        // given
+        var body = "{\"movieInfoId\": 4, \"comment\": \"Awesome Movie\", \"rating\": 9.0}\n"
+                + "{\"movieInfoId\": null, \"comment\": \"Invalid\", \"rating\": 7.0}\n"
+                + "{\"reviewId\": \"abc\", \"movieInfoId\": 4, \"comment\": \"Duplicated\", \"rating\": 8.0}\n"
+                + "{\"movieInfoId\": 4, \"comment\": \"Good Movie\", \"rating\": 7.0}\n";
+
+        // when
+        webTestClient.post()
+                .uri(REVIEW_URL + "/batch")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue(body)
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectBodyList(ReviewBatchResult.class)
+                .consumeWith(listEntityExchangeResult -> {
+                    var results = listEntityExchangeResult.getResponseBody();
+
+                    assertNotNull(results);
+                    assertEquals(4, results.size());
+                    assertEquals(ReviewBatchResult.Status.CREATED, results.get(0).getStatus());
+                    assertNotNull(results.get(0).getReviewId());
+                    assertEquals(ReviewBatchResult.Status.INVALID, results.get(1).getStatus());
+                    assertEquals(ReviewBatchResult.Status.DUPLICATE, results.get(2).getStatus());
+                    assertEquals(ReviewBatchResult.Status.CREATED, results.get(3).getStatus());
+                });
+
+        // Solo cuentan en las estadísticas las reviews insertadas.
+        webTestClient.get()
+                .uri(REVIEW_URL + "/stats?movie-info-id=4")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(2)
+                .jsonPath("$.average").isEqualTo(8.0)
+                .jsonPath("$.minRating").isEqualTo(7.0)
+                .jsonPath("$.maxRating").isEqualTo(9.0);
+    }
+
     @Test
     void getAllReviewsTest() {
         // when
@@ -91,6 +148,126 @@ class ReviewRouterIntgTest {
                 .hasSize(2);
     }
 
+    @Test
+    void getAllReviewsByMovieInfoIdsTest() {
+        // given
+        var uri = UriComponentsBuilder.fromUriString(REVIEW_URL)
+                .queryParam("movie-info-id", 1L, 2L)
+                .buildAndExpand().toUri();
+
+        // when
+        webTestClient.get()
+                .uri(uri.toString())
+                .exchange()
+                // then
+                .expectStatus().is2xxSuccessful()
+                .expectBodyList(Review.class)
+                .hasSize(3);
+    }
+
+    @Test
+    void getReviewsPagesTest() {
+        // given
+        // La review nueva tiene fecha de creación y va la primera. Las reviews de "setUp" no tienen fecha y van detrás
+        // ordenadas por id(primero los ObjectId y después los String).
+        var newReviewId = addReview(new Review(null, 1L, "Good Movie", 7.0));
+        var reviewIds = new ArrayList<String>();
+        String cursor = null;
+
+        // when
+        do {
+            var uri = UriComponentsBuilder.fromUriString(REVIEW_URL)
+                    .queryParam("movie-info-id", 1L)
+                    .queryParam("limit", 1);
+
+            if(cursor != null)
+                uri.queryParam("cursor", cursor);
+
+            var result = webTestClient.get()
+                    .uri(uri.build().toUriString())
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectBodyList(Review.class)
+                    .hasSize(1)
+                    .returnResult();
+
+            reviewIds.add(result.getResponseBody().get(0).getReviewId());
+            cursor = result.getResponseHeaders().getFirst("X-Next-Cursor");
+        } while(cursor != null);
+
+        // then
+        assertEquals(3, reviewIds.size());
+        assertEquals(newReviewId, reviewIds.get(0));
+        assertEquals("abc", reviewIds.get(2));
+    }
+
+    @Test
+    void getReviewsSortedByRatingTest() {
+        // given
+        addReview(new Review(null, 2L, "Awesome Movie", 9.5));
+        addReview(new Review(null, 2L, "Bad Movie", 3.0));
+
+        // when
+        webTestClient.get()
+                .uri(REVIEW_URL + "?movie-info-id=2&sort=rating&limit=2")
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectHeader().exists("X-Next-Cursor")
+                .expectBody()
+                .jsonPath("$[0].rating").isEqualTo(9.5)
+                .jsonPath("$[1].rating").isEqualTo(8.0);
+    }
+
+    @Test
+    void streamReviewsTest() {
+        // when
+        webTestClient.get()
+                .uri(REVIEW_URL + "?movie-info-id=1")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBodyList(Review.class)
+                .hasSize(2);
+    }
+
+    @Test
+    void getGroupedReviewsTest() {
+        // when
+        webTestClient.get()
+                .uri(REVIEW_URL + "/grouped?movie-info-id=1&movie-info-id=2&movie-info-id=3&limit-per-movie=1")
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.1.length()").isEqualTo(1)
+                .jsonPath("$.2[0].comment").isEqualTo("Excellent Movie")
+                .jsonPath("$.3.length()").isEqualTo(0);
+    }
+
+    @Test
+    void getGroupedReviewsSortedByRatingTest() {
+        // given
+        addReview(new Review(null, 2L, "Good Movie", 7.0));
+        addReview(new Review(null, 1L, "Masterpiece", 10.0));
+
+        // when
+        webTestClient.get()
+                .uri(REVIEW_URL + "/grouped?movie-info-id=2&movie-info-id=1&limit-per-movie=2&sort=rating")
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.1.length()").isEqualTo(2)
+                .jsonPath("$.1[0].comment").isEqualTo("Masterpiece")
+                .jsonPath("$.1[1].rating").isEqualTo(9.0)
+                .jsonPath("$.2.length()").isEqualTo(2)
+                .jsonPath("$.2[0].comment").isEqualTo("Excellent Movie")
+                .jsonPath("$.2[1].comment").isEqualTo("Good Movie");
+    }
+
     @Test
     void updateReviewTest() {
         // given
@@ -115,6 +292,73 @@ class ReviewRouterIntgTest {
                 });
     }
 
+    @Test
+    void updateReviewWithIfMatchTest() {
+        // given
+        var reviewId = "abc";
+
+        var review = new Review(null, 1L, "Not an Awesome Movie", 8.0);
+
+        // when
+        // La primera actualización incrementa la versión, así que la segunda con el mismo "ETag" falla.
+        webTestClient.put()
+                .uri(REVIEW_URL + "/{id}", reviewId)
+                .header(HttpHeaders.IF_MATCH, "\"0\"")
+                .bodyValue(review)
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1\"");
+
+        webTestClient.put()
+                .uri(REVIEW_URL + "/{id}", reviewId)
+                .header(HttpHeaders.IF_MATCH, "\"0\"")
+                .bodyValue(review)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+
+        webTestClient.get()
+                .uri(REVIEW_URL + "/{id}", reviewId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1\"");
+    }
+
+    // Las reviews guardadas antes de añadir la versión no tienen el campo "version" en MongoDB.
+    @Test
+    void updateReviewWithoutVersionTest() {
+        // given
+        var reviewId = "def";
+
+        var legacyReview = new Document("_id", reviewId)
+                .append("movieInfoId", 1L)
+                .append("comment", "Awesome Movie")
+                .append("rating", 9.0);
+
+        reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(Review.class))
+                .flatMap(collection -> Mono.from(collection.insertOne(legacyReview)))
+                .block();
+
+        var review = new Review(null, 1L, "Not an Awesome Movie", 8.0);
+
+        // when
+        webTestClient.put()
+                .uri(REVIEW_URL + "/{id}", reviewId)
+                .bodyValue(review)
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1\"")
+                .expectBody(Review.class)
+                .consumeWith(reviewEntityExchangeResult -> {
+                    var updatedReview = reviewEntityExchangeResult.getResponseBody();
+
+                    assertNotNull(updatedReview);
+                    assertEquals(reviewId, updatedReview.getReviewId());
+                    assertEquals("Not an Awesome Movie", updatedReview.getComment());
+                });
+    }
+
     @Test
     void deleteReviewTest() {
         // given
@@ -127,4 +371,129 @@ class ReviewRouterIntgTest {
                 // then
                 .expectStatus().isNoContent();
     }
+
+    @Test
+    void reviewStatsTest() {
+        // given
+        var movieInfoId = 3L;
+
+        var firstReviewId = addReview(new Review(null, movieInfoId, "Awesome Movie", 9.0));
+        var secondReviewId = addReview(new Review(null, movieInfoId, "Good Movie", 7.0));
+        addReview(new Review(null, movieInfoId, "Nice Movie", 7.5));
+
+        // when
+        webTestClient.put()
+                .uri(REVIEW_URL + "/{id}", secondReviewId)
+                .bodyValue(new Review(null, movieInfoId, "Excellent Movie", 8.5))
+                .exchange()
+                .expectStatus().isOk();
+
+        webTestClient.delete()
+                .uri(REVIEW_URL + "/{id}", firstReviewId)
+                .exchange()
+                .expectStatus().isNoContent();
+
+        // then
+        // Quedan las puntuaciones 8.5 y 7.5. La máxima se ha vuelto a calcular al eliminar la review con 9.0.
+        webTestClient.get()
+                .uri(REVIEW_URL + "/stats?movie-info-id={id}", movieInfoId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(2)
+                .jsonPath("$.average").isEqualTo(8.0)
+                .jsonPath("$.minRating").isEqualTo(7.5)
+                .jsonPath("$.maxRating").isEqualTo(8.5)
+                .jsonPath("$.histogram.7").isEqualTo(1)
+                .jsonPath("$.histogram.8").isEqualTo(1)
+                .jsonPath("$.histogram.9").isEqualTo(0);
+    }
+
+    // Las reviews de "setUp" se guardan sin pasar por el servicio, igual que las reviews anteriores a las estadísticas.
+    @Test
+    void seedMissingStatsTest() {
+        // when
+        var seededMovies = reviewStatsRepository.seedMissingStats().block();
+
+        // then
+        assertEquals(2L, seededMovies);
+
+        webTestClient.get()
+                .uri(REVIEW_URL + "/stats?movie-info-id={id}", 1L)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(2)
+                .jsonPath("$.average").isEqualTo(9.0)
+                .jsonPath("$.minRating").isEqualTo(9.0)
+                .jsonPath("$.maxRating").isEqualTo(9.0)
+                .jsonPath("$.histogram.9").isEqualTo(2);
+
+        // Las estadísticas que ya existen no se vuelven a crear.
+        assertEquals(0L, reviewStatsRepository.seedMissingStats().block());
+    }
+
+    // Sin estadísticas, quitar la puntuación no resta: se calculan con las reviews que quedan.
+    @Test
+    void deleteReviewWithoutStatsTest() {
+        // when
+        webTestClient.delete()
+                .uri(REVIEW_URL + "/{id}", "abc")
+                .exchange()
+                .expectStatus().isNoContent();
+
+        // then
+        webTestClient.get()
+                .uri(REVIEW_URL + "/stats?movie-info-id={id}", 1L)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(1)
+                .jsonPath("$.average").isEqualTo(9.0)
+                .jsonPath("$.histogram.9").isEqualTo(1);
+    }
+
+    // Las estadísticas creadas después de las reviews anteriores no las incluyen. Cambiar la puntuación de una de esas
+    // reviews no deja el histograma en negativo: las estadísticas se calculan de nuevo con todas las reviews.
+    @Test
+    void updateReviewWithIncompleteStatsTest() {
+        // given
+        addReview(new Review(null, 1L, "Good Movie", 8.0));
+
+        // when
+        webTestClient.put()
+                .uri(REVIEW_URL + "/{id}", "abc")
+                .bodyValue(new Review(null, 1L, "Nice Movie", 7.0))
+                .exchange()
+                .expectStatus().isOk();
+
+        // then
+        webTestClient.get()
+                .uri(REVIEW_URL + "/stats?movie-info-id={id}", 1L)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(3)
+                .jsonPath("$.average").isEqualTo(8.0)
+                .jsonPath("$.minRating").isEqualTo(7.0)
+                .jsonPath("$.maxRating").isEqualTo(9.0)
+                .jsonPath("$.histogram.7").isEqualTo(1)
+                .jsonPath("$.histogram.8").isEqualTo(1)
+                .jsonPath("$.histogram.9").isEqualTo(1);
+    }
+
+    private String addReview(Review review) {
+        var savedReview = webTestClient.post()
+                .uri(REVIEW_URL)
+                .bodyValue(review)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(Review.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertNotNull(savedReview);
+
+        return savedReview.getReviewId();
+    }
 }
@@ -0,0 +1,79 @@
+package com.reactivespring.router;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.repository.ReviewRepository;
+import com.reactivespring.repository.ReviewStatsRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ActiveProfiles("test")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {
+        "review.writeBehind.enabled=true",
+        "review.writeBehind.flushInterval=50ms"
+})
+class ReviewRouterWriteBehindIntgTest {
+    private static final String REVIEW_URL = "v1/reviews";
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Autowired
+    ReviewRepository reviewRepository;
+
+    @Autowired
+    ReviewStatsRepository reviewStatsRepository;
+
+    @AfterEach
+    void tearDown() {
+        reviewRepository.deleteAll().block();
+        reviewStatsRepository.deleteAll().block();
+    }
+
+    @Test
+    void addReviewTest() throws InterruptedException {
+        // given
+        var review = new Review(null, 1L, "Awesome Movie", 9.0);
+
+        // when
+        var reviewId = webTestClient.post()
+                .uri(REVIEW_URL)
+                .bodyValue(review)
+                .exchange()
+                // then
+                .expectStatus().isAccepted()
+                .expectBody(Review.class)
+                .returnResult()
+                .getResponseBody()
+                .getReviewId();
+
+        assertNotNull(reviewId);
+
+        // La review se escribe en segundo plano con el id que se ha devuelto al cliente.
+        Review savedReview = null;
+
+        for(var i = 0; i < 50 && savedReview == null; i++) {
+            Thread.sleep(100);
+            savedReview = reviewRepository.findById(reviewId).block();
+        }
+
+        assertNotNull(savedReview);
+        assertEquals(0L, savedReview.getVersion());
+        assertNotNull(savedReview.getCreatedAt());
+
+        webTestClient.get()
+                .uri(REVIEW_URL + "/stats?movie-info-id=1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(1)
+                .jsonPath("$.average").isEqualTo(9.0);
+    }
+}
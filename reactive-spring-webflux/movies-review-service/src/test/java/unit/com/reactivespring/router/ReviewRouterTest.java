@@ -1,23 +1,37 @@
 package com.reactivespring.router;
 
+import com.mongodb.bulk.BulkWriteError;
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewBatchResult;
+import com.reactivespring.domain.ReviewCursor;
+import com.reactivespring.domain.ReviewSort;
+import com.reactivespring.domain.ReviewStats;
 import com.reactivespring.exception.GlobalExceptionHandler;
 import com.reactivespring.handler.ReviewHandler;
 import com.reactivespring.repository.ReviewRepository;
+import com.reactivespring.repository.ReviewStatsRepository;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 @WebFluxTest
 @ContextConfiguration(classes = { ReviewRouter.class, ReviewHandler.class, GlobalExceptionHandler.class })
@@ -27,9 +41,19 @@ class ReviewRouterTest {
     @MockBean
     ReviewRepository reviewRepository;
 
+    @MockBean
+    ReviewStatsRepository reviewStatsRepository;
+
     @Autowired
     WebTestClient webTestClient;
 
+    @BeforeEach
+    void setUp() {
+        when(reviewStatsRepository.addRating(any(), any())).thenReturn(Mono.empty());
+        when(reviewStatsRepository.removeRating(any(), any())).thenReturn(Mono.empty());
+        when(reviewStatsRepository.replaceRating(any(), any(), any())).thenReturn(Mono.empty());
+    }
+
     @Test
     void addReviewTest() {
         // given
@@ -54,6 +78,8 @@ class ReviewRouterTest {
                     assertNotNull(responseBody.getReviewId());
                     assertEquals("mockId", responseBody.getReviewId());
                 });
+
+        verify(reviewStatsRepository).addRating(1L, 9.0);
     }
 
     @Test
@@ -72,6 +98,85 @@ class ReviewRouterTest {
                 .isEqualTo("review.movieInfoId must not be null,review.rating: please pass a non-negative value");
     }
 
+    @Test
+    void addReviewsTest() {
+        // given
+        var body = "{\"reviewId\": \"a\", \"movieInfoId\": 1, \"comment\": \"Awesome Movie\", \"rating\": 9.0}\n"
+                + "{\"reviewId\": null, \"movieInfoId\": null, \"comment\": \"Invalid\", \"rating\": 7.0}\n"
+                + "{\"reviewId\": \"abc\", \"movieInfoId\": 1, \"comment\": \"Duplicated\", \"rating\": 8.0}\n"
+                + "{\"reviewId\": \"b\", \"movieInfoId\": 1, \"comment\": \"Excellent Movie\", \"rating\": 8.5}\n";
+
+        // La segunda review válida(posición 1 del lote que se inserta) ya existe.
+        when(reviewRepository.insertAllUnordered(anyList())).thenReturn(Mono.just(Map.of(1,
+                new BulkWriteError(11000, "E11000 duplicate key error", new BsonDocument(), 1))));
+        when(reviewStatsRepository.addRatings(any(), any())).thenReturn(Mono.empty());
+
+        // when
+        webTestClient.post()
+                .uri(REVIEW_URL + "/batch")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue(body)
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectBodyList(ReviewBatchResult.class)
+                .consumeWith(listEntityExchangeResult -> {
+                    var results = listEntityExchangeResult.getResponseBody();
+
+                    assertNotNull(results);
+                    assertEquals(4, results.size());
+                    assertEquals(ReviewBatchResult.Status.CREATED, results.get(0).getStatus());
+                    assertEquals("a", results.get(0).getReviewId());
+                    assertEquals(ReviewBatchResult.Status.INVALID, results.get(1).getStatus());
+                    assertEquals("review.movieInfoId must not be null", results.get(1).getMessage());
+                    assertEquals(ReviewBatchResult.Status.DUPLICATE, results.get(2).getStatus());
+                    assertEquals(ReviewBatchResult.Status.CREATED, results.get(3).getStatus());
+                    assertEquals(3, results.get(3).getIndex());
+                });
+
+        // Una única actualización de las estadísticas con las puntuaciones de las reviews insertadas.
+        verify(reviewStatsRepository).addRatings(1L, List.of(9.0, 8.5));
+        verify(reviewRepository, never()).save(any());
+    }
+
+    @Test
+    void addReviewsWithSlowWritesTest() {
+        // given
+        // El cliente envía las reviews despacio, así que los lotes se cierran por tiempo mientras las escrituras
+        // anteriores todavía no han terminado.
+        var reviews = Flux.range(1, 12)
+                .map(i -> new Review(null, 1L, "Review " + i, 8.0))
+                .delayElements(Duration.ofMillis(40));
+
+        when(reviewRepository.insertAllUnordered(anyList())).thenReturn(Mono.just(Map.<Integer, BulkWriteError>of())
+                .delayElement(Duration.ofMillis(400)));
+        when(reviewStatsRepository.addRatings(any(), any())).thenReturn(Mono.empty());
+
+        // when
+        webTestClient.mutate()
+                .responseTimeout(Duration.ofSeconds(30))
+                .build()
+                .post()
+                .uri(REVIEW_URL + "/batch")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(reviews, Review.class)
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectBodyList(ReviewBatchResult.class)
+                .consumeWith(listEntityExchangeResult -> {
+                    var results = listEntityExchangeResult.getResponseBody();
+
+                    assertNotNull(results);
+                    assertEquals(12, results.size());
+                    assertTrue(results.stream()
+                            .allMatch(result -> result.getStatus() == ReviewBatchResult.Status.CREATED));
+                });
+
+        // Más lotes que escrituras simultáneas.
+        verify(reviewRepository, atLeast(3)).insertAllUnordered(anyList());
+    }
+
     @Test
     void getAllReviewsTest() {
         // given
@@ -80,7 +185,7 @@ class ReviewRouterTest {
                 new Review(null, 1L, "Awesome Movie1", 9.0),
                 new Review(null, 2L, "Excellent Movie", 8.0));
 
-        when(reviewRepository.findAll()).thenReturn(Flux.fromIterable(reviewList));
+        when(reviewRepository.findPage(null, ReviewSort.NEWEST, null, 21)).thenReturn(Flux.fromIterable(reviewList));
 
         // when
         webTestClient.get()
@@ -92,6 +197,216 @@ class ReviewRouterTest {
                 .hasSize(3);
     }
 
+    @Test
+    void getAllReviewsByMovieInfoIdsTest() {
+        // given
+        var reviewList = Arrays.asList(
+                new Review(null, 1L, "Awesome Movie", 9.0),
+                new Review(null, 2L, "Excellent Movie", 8.0));
+
+        when(reviewRepository.findPage(List.of(1L, 2L), ReviewSort.NEWEST, null, 21))
+                .thenReturn(Flux.fromIterable(reviewList));
+
+        // when
+        webTestClient.get()
+                .uri(REVIEW_URL + "?movie-info-id=1&movie-info-id=2")
+                .exchange()
+                // then
+                .expectStatus().is2xxSuccessful()
+                .expectBodyList(Review.class)
+                .hasSize(2);
+    }
+
+    @Test
+    void getReviewsPageTest() {
+        // given
+        var reviewList = Arrays.asList(
+                new Review("c", 1L, "Awesome Movie", 9.0),
+                new Review("b", 1L, "Excellent Movie", 8.0),
+                new Review("a", 1L, "Good Movie", 7.0));
+
+        // Se pide una review más que el tamaño de la página para saber si existe una página siguiente.
+        when(reviewRepository.findPage(List.of(1L), ReviewSort.RATING, null, 3))
+                .thenReturn(Flux.fromIterable(reviewList));
+
+        // when
+        var nextCursor = webTestClient.get()
+                .uri(REVIEW_URL + "?movie-info-id=1&sort=rating&limit=2")
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectBodyList(Review.class)
+                .hasSize(2)
+                .returnResult()
+                .getResponseHeaders().getFirst(ReviewHandler.NEXT_CURSOR_HEADER);
+
+        assertNotNull(nextCursor);
+
+        var cursor = ReviewCursor.decode(nextCursor, ReviewSort.RATING);
+
+        assertEquals(8.0, cursor.getValue());
+        assertEquals("b", cursor.getReviewId());
+    }
+
+    @Test
+    void getReviewsLastPageTest() {
+        // given
+        when(reviewRepository.findPage(eq(List.of(1L)), eq(ReviewSort.NEWEST), isA(ReviewCursor.class), eq(3)))
+                .thenReturn(Flux.just(new Review("a", 1L, "Good Movie", 7.0)));
+
+        var cursor = new ReviewCursor(ReviewSort.NEWEST, null, "b").encode();
+
+        // when
+        webTestClient.get()
+                .uri(REVIEW_URL + "?movie-info-id=1&limit=2&cursor={cursor}", cursor)
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectHeader().doesNotExist(ReviewHandler.NEXT_CURSOR_HEADER)
+                .expectBodyList(Review.class)
+                .hasSize(1);
+    }
+
+    @Test
+    void getReviewsWithInvalidSortTest() {
+        // when
+        webTestClient.get()
+                .uri(REVIEW_URL + "?sort=oldest")
+                .exchange()
+                // then
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("The sort is not valid, it must be one of: newest,rating");
+    }
+
+    @Test
+    void getReviewsWithInvalidLimitTest() {
+        // when
+        webTestClient.get()
+                .uri(REVIEW_URL + "?limit=ten")
+                .exchange()
+                // then
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("The limit query param is not a valid number: ten");
+    }
+
+    @Test
+    void getReviewsWithInvalidMovieInfoIdTest() {
+        // when
+        webTestClient.get()
+                .uri(REVIEW_URL + "?movie-info-id=1&movie-info-id=abc")
+                .exchange()
+                // then
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("The movie-info-id query param is not a valid number: abc");
+
+        verify(reviewRepository, never()).findPage(any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void getReviewsWithCursorOfAnotherSortTest() {
+        // given
+        var cursor = new ReviewCursor(ReviewSort.NEWEST, null, "b").encode();
+
+        // when
+        webTestClient.get()
+                .uri(REVIEW_URL + "?sort=rating&cursor={cursor}", cursor)
+                .exchange()
+                // then
+                .expectStatus().isBadRequest();
+
+        verify(reviewRepository, never()).findPage(any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void streamReviewsTest() {
+        // given
+        var reviewList = Arrays.asList(
+                new Review(null, 1L, "Awesome Movie", 9.0),
+                new Review(null, 1L, "Excellent Movie", 8.0));
+
+        when(reviewRepository.findAllSorted(List.of(1L), ReviewSort.NEWEST)).thenReturn(Flux.fromIterable(reviewList));
+
+        // when
+        webTestClient.get()
+                .uri(REVIEW_URL + "?movie-info-id=1")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBodyList(Review.class)
+                .hasSize(2);
+
+        verify(reviewRepository, never()).findPage(any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void getGroupedReviewsTest() {
+        // given
+        var reviewList = Arrays.asList(
+                new Review("a", 1L, "Awesome Movie", 9.0),
+                new Review("b", 2L, "Excellent Movie", 8.0),
+                new Review("c", 1L, "Good Movie", 7.0));
+
+        when(reviewRepository.findAllSorted(List.of(1L, 2L, 3L), ReviewSort.NEWEST))
+                .thenReturn(Flux.fromIterable(reviewList));
+
+        // when
+        webTestClient.get()
+                .uri(REVIEW_URL + "/grouped?movie-info-id=1&movie-info-id=2&movie-info-id=3")
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.1.length()").isEqualTo(2)
+                .jsonPath("$.1[0].reviewId").isEqualTo("a")
+                .jsonPath("$.2[0].reviewId").isEqualTo("b")
+                .jsonPath("$.3.length()").isEqualTo(0);
+    }
+
+    @Test
+    void getGroupedReviewsWithLimitPerMovieTest() {
+        // given
+        var reviewList = Arrays.asList(
+                new Review("a", 1L, "Awesome Movie", 9.0),
+                new Review("b", 2L, "Excellent Movie", 8.0));
+
+        when(reviewRepository.findFirstPerMovie(List.of(1L, 2L, 3L), ReviewSort.RATING, 1))
+                .thenReturn(Flux.fromIterable(reviewList));
+
+        // when
+        webTestClient.get()
+                .uri(REVIEW_URL + "/grouped?movie-info-id=1&movie-info-id=2&movie-info-id=3&limit-per-movie=1"
+                        + "&sort=rating")
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.1.length()").isEqualTo(1)
+                .jsonPath("$.1[0].reviewId").isEqualTo("a")
+                .jsonPath("$.2[0].reviewId").isEqualTo("b")
+                .jsonPath("$.3.length()").isEqualTo(0);
+
+        // El límite se aplica en MongoDB, con una única agregación para todas las películas.
+        verify(reviewRepository, never()).findAllSorted(any(), any());
+        verify(reviewRepository, never()).findPage(any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void getGroupedReviewsWithoutMovieInfoIdTest() {
+        // when
+        webTestClient.get()
+                .uri(REVIEW_URL + "/grouped")
+                .exchange()
+                // then
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("The movie-info-id query param must be present");
+    }
+
     @Test
     void updateReviewTest() {
         // given
@@ -99,12 +414,12 @@ class ReviewRouterTest {
 
         var review = new Review(null, 1L, "Awesome Movie1", 9.0);
 
-        var existingReview = new Review(reviewId, 1L, "Awesome Movie", 9.0);
+        var existingReview = new Review(reviewId, 1L, "Awesome Movie", 9.0, 0L);
 
-        var updatedReview = new Review(reviewId, 1L, "Awesome Movie1", 9.0);
+        var updatedReview = new Review(reviewId, 1L, "Awesome Movie1", 9.0, 1L);
 
         when(reviewRepository.findById(isA(String.class))).thenReturn(Mono.just(existingReview));
-        when(reviewRepository.save(isA(Review.class))).thenReturn(Mono.just(updatedReview));
+        when(reviewRepository.updateContent(reviewId, 0L, "Awesome Movie1", 9.0)).thenReturn(Mono.just(updatedReview));
 
         // when
         webTestClient.put()
@@ -123,6 +438,36 @@ class ReviewRouterTest {
                 });
     }
 
+    @Test
+    void updateReviewWithoutVersionTest() {
+        // given
+        var reviewId = "abc";
+
+        var review = new Review(null, 1L, "Awesome Movie1", 8.0);
+
+        // Review guardada antes de añadir la versión.
+        var existingReview = new Review(reviewId, 1L, "Awesome Movie", 9.0);
+
+        var updatedReview = new Review(reviewId, 1L, "Awesome Movie1", 8.0, 1L);
+
+        when(reviewRepository.findById(isA(String.class))).thenReturn(Mono.just(existingReview));
+        when(reviewRepository.updateContent(reviewId, null, "Awesome Movie1", 8.0))
+                .thenReturn(Mono.just(updatedReview));
+        when(reviewStatsRepository.replaceRating(1L, 9.0, 8.0)).thenReturn(Mono.empty());
+
+        // when
+        webTestClient.put()
+                .uri(REVIEW_URL + "/{id}", reviewId)
+                .bodyValue(review)
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1\"");
+
+        verify(reviewRepository, never()).save(any());
+        verify(reviewStatsRepository).replaceRating(1L, 9.0, 8.0);
+    }
+
     @Test
     void updateReviewNotFoundTest() {
         // given
@@ -143,12 +488,105 @@ class ReviewRouterTest {
                 .isEqualTo("Review not found for the given id " + reviewId);
     }
 
+    @Test
+    void getReviewByIdTest() {
+        // given
+        var reviewId = "abc";
+
+        when(reviewRepository.findById(isA(String.class)))
+                .thenReturn(Mono.just(new Review(reviewId, 1L, "Awesome Movie", 9.0, 2L)));
+
+        // when
+        webTestClient.get()
+                .uri(REVIEW_URL + "/{id}", reviewId)
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"2\"")
+                .expectBody(Review.class)
+                .consumeWith(reviewEntityExchangeResult -> {
+                    var responseBody = reviewEntityExchangeResult.getResponseBody();
+
+                    assertNotNull(responseBody);
+                    assertEquals(2L, responseBody.getVersion());
+                });
+    }
+
+    @Test
+    void updateReviewWithIfMatchTest() {
+        // given
+        var reviewId = "abc";
+
+        var review = new Review(null, 1L, "Awesome Movie1", 9.0);
+
+        var existingReview = new Review(reviewId, 1L, "Awesome Movie", 9.0, 2L);
+
+        var updatedReview = new Review(reviewId, 1L, "Awesome Movie1", 9.0, 3L);
+
+        when(reviewRepository.findById(isA(String.class))).thenReturn(Mono.just(existingReview));
+        when(reviewRepository.updateContent(reviewId, 2L, "Awesome Movie1", 9.0)).thenReturn(Mono.just(updatedReview));
+
+        // when
+        webTestClient.put()
+                .uri(REVIEW_URL + "/{id}", reviewId)
+                .header(HttpHeaders.IF_MATCH, "\"2\"")
+                .bodyValue(review)
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"3\"");
+    }
+
+    @Test
+    void updateReviewWithVersionMismatchTest() {
+        // given
+        var reviewId = "abc";
+
+        var review = new Review(null, 1L, "Awesome Movie1", 9.0);
+
+        when(reviewRepository.findById(isA(String.class)))
+                .thenReturn(Mono.just(new Review(reviewId, 1L, "Awesome Movie", 9.0, 3L)));
+
+        // when
+        webTestClient.put()
+                .uri(REVIEW_URL + "/{id}", reviewId)
+                .header(HttpHeaders.IF_MATCH, "\"2\"")
+                .bodyValue(review)
+                .exchange()
+                // then
+                .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+
+        verify(reviewRepository, never()).updateContent(any(), any(), any(), any());
+    }
+
+    @Test
+    void updateReviewWithConcurrentModificationTest() {
+        // given
+        var reviewId = "abc";
+
+        var review = new Review(null, 1L, "Awesome Movie1", 9.0);
+
+        // Otra petición modifica la review entre la lectura y la escritura.
+        when(reviewRepository.findById(isA(String.class)))
+                .thenReturn(Mono.just(new Review(reviewId, 1L, "Awesome Movie", 9.0, 2L)));
+        when(reviewRepository.updateContent(reviewId, 2L, "Awesome Movie1", 9.0)).thenReturn(Mono.empty());
+
+        // when
+        webTestClient.put()
+                .uri(REVIEW_URL + "/{id}", reviewId)
+                .bodyValue(review)
+                .exchange()
+                // then
+                .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+    }
+
     @Test
     void deleteReviewTest() {
         // given
         var reviewId = "abc";
 
-        when(reviewRepository.deleteById(isA(String.class))).thenReturn(Mono.empty());
+        when(reviewRepository.deleteByReviewId(reviewId))
+                .thenReturn(Mono.just(new Review(reviewId, 1L, "Awesome Movie", 9.0)));
 
         // when
         webTestClient.delete()
@@ -156,5 +594,100 @@ class ReviewRouterTest {
                 .exchange()
                 // then
                 .expectStatus().isNoContent();
+
+        verify(reviewStatsRepository).removeRating(1L, 9.0);
+    }
+
+    @Test
+    void deleteReviewNotFoundTest() {
+        // given
+        when(reviewRepository.deleteByReviewId(isA(String.class))).thenReturn(Mono.empty());
+
+        // when
+        webTestClient.delete()
+                .uri(REVIEW_URL + "/{id}", "abc")
+                .exchange()
+                // then
+                .expectStatus().isNoContent();
+
+        verify(reviewStatsRepository, never()).removeRating(any(), any());
+    }
+
+    @Test
+    void getGroupedReviewsWithInvalidLimitPerMovieTest() {
+        // when
+        webTestClient.get()
+                .uri(REVIEW_URL + "/grouped?movie-info-id=1&limit-per-movie=5x")
+                .exchange()
+                // then
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("The limit-per-movie query param is not a valid number: 5x");
+    }
+
+    @Test
+    void getReviewStatsTest() {
+        // given
+        var reviewStats = new ReviewStats(1L, 2L, 17.0, 8.0, 9.0, Map.of("8", 1L, "9", 1L));
+
+        when(reviewStatsRepository.findById(1L)).thenReturn(Mono.just(reviewStats));
+
+        // when
+        webTestClient.get()
+                .uri(REVIEW_URL + "/stats?movie-info-id=1")
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(2)
+                .jsonPath("$.average").isEqualTo(8.5)
+                .jsonPath("$.minRating").isEqualTo(8.0)
+                .jsonPath("$.maxRating").isEqualTo(9.0)
+                .jsonPath("$.histogram.9").isEqualTo(1)
+                .jsonPath("$.ratingSum").doesNotExist();
+
+        verify(reviewRepository, never()).findAllByMovieInfoId(any());
+    }
+
+    @Test
+    void getReviewStatsWithoutReviewsTest() {
+        // given
+        when(reviewStatsRepository.findById(1L)).thenReturn(Mono.empty());
+
+        // when
+        webTestClient.get()
+                .uri(REVIEW_URL + "/stats?movie-info-id=1")
+                .exchange()
+                // then
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(0)
+                .jsonPath("$.average").doesNotExist();
+    }
+
+    @Test
+    void getReviewStatsWithoutMovieInfoIdTest() {
+        // when
+        webTestClient.get()
+                .uri(REVIEW_URL + "/stats")
+                .exchange()
+                // then
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("The movie-info-id query param must be present");
+    }
+
+    @Test
+    void getReviewStatsWithInvalidMovieInfoIdTest() {
+        // when
+        webTestClient.get()
+                .uri(REVIEW_URL + "/stats?movie-info-id=abc")
+                .exchange()
+                // then
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("The movie-info-id query param is not a valid number: abc");
+
+        verify(reviewStatsRepository, never()).findById(anyLong());
     }
 }
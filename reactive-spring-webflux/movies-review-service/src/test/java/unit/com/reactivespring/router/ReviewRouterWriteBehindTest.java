@@ -0,0 +1,159 @@
+package com.reactivespring.router;
+
+import com.mongodb.MongoSocketReadException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.reactivespring.domain.Review;
+import com.reactivespring.exception.GlobalExceptionHandler;
+import com.reactivespring.handler.ReviewHandler;
+import com.reactivespring.repository.ReviewRepository;
+import com.reactivespring.repository.ReviewStatsRepository;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.MockReset;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@WebFluxTest
+@ContextConfiguration(classes = { ReviewRouter.class, ReviewHandler.class, GlobalExceptionHandler.class })
+// Cola con espacio para una sola review y que no se escribe durante las pruebas.
+@TestPropertySource(properties = {
+        "review.writeBehind.enabled=true",
+        "review.writeBehind.capacity=1",
+        "review.writeBehind.flushInterval=1h",
+        "review.writeBehind.retryBackoff=10ms"
+})
+class ReviewRouterWriteBehindTest {
+    private static final String REVIEW_URL = "/v1/reviews";
+
+    // La cola se escribe al cerrar el contexto, después de las pruebas, así que los mocks no se reinician.
+    @MockBean(reset = MockReset.NONE)
+    ReviewRepository reviewRepository;
+
+    @MockBean(reset = MockReset.NONE)
+    ReviewStatsRepository reviewStatsRepository;
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Autowired
+    ReviewHandler reviewHandler;
+
+    @BeforeEach
+    void setUp() {
+        clearInvocations(reviewRepository);
+        clearInvocations(reviewStatsRepository);
+        when(reviewRepository.insertAllUnordered(anyList())).thenReturn(Mono.just(Map.of()));
+        when(reviewStatsRepository.addRatings(any(), any())).thenReturn(Mono.empty());
+    }
+
+    @Test
+    // La prueba llena la cola, así que las siguientes pruebas necesitan un contexto nuevo.
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.AFTER_METHOD)
+    void addReviewTest() {
+        // given
+        var review = new Review(null, 1L, "Awesome Movie", 9.0);
+
+        // when
+        webTestClient.post()
+                .uri(REVIEW_URL)
+                .bodyValue(review)
+                .exchange()
+                // then
+                .expectStatus().isAccepted()
+                .expectBody(Review.class)
+                .consumeWith(reviewEntityExchangeResult -> {
+                    var responseBody = reviewEntityExchangeResult.getResponseBody();
+
+                    assertNotNull(responseBody);
+                    assertNotNull(responseBody.getReviewId());
+                    assertNotNull(responseBody.getCreatedAt());
+                });
+
+        // La cola está llena.
+        webTestClient.post()
+                .uri(REVIEW_URL)
+                .bodyValue(review)
+                .exchange()
+                .expectStatus().isEqualTo(429)
+                .expectHeader().valueEquals(HttpHeaders.RETRY_AFTER, "1");
+
+        // La review se escribe más tarde, con el resto de reviews de la cola.
+        verify(reviewRepository, never()).save(any());
+    }
+
+    @Test
+    void addReviewWithIdTest() {
+        // given
+        var review = new Review("abc", 1L, "Awesome Movie", 9.0);
+
+        // when
+        webTestClient.post()
+                .uri(REVIEW_URL)
+                .bodyValue(review)
+                .exchange()
+                // then
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("The reviewId must not be present, it is assigned by the service");
+    }
+
+    @Test
+    // La prueba cierra la cola, así que las siguientes pruebas necesitan un contexto nuevo.
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.AFTER_METHOD)
+    void retriedWriteCountsRatingsOnceTest() {
+        // given
+        // El primer intento inserta la review pero falla antes de devolver el resultado. En el segundo intento la
+        // review ya existe.
+        when(reviewRepository.insertAllUnordered(anyList()))
+                .thenReturn(Mono.error(new MongoSocketReadException("Prematurely reached end of stream",
+                        new ServerAddress())))
+                .thenReturn(Mono.just(Map.of(0, new BulkWriteError(11000, "E11000 duplicate key error",
+                        new BsonDocument(), 0))));
+
+        webTestClient.post()
+                .uri(REVIEW_URL)
+                .bodyValue(new Review(null, 1L, "Awesome Movie", 9.0))
+                .exchange()
+                .expectStatus().isAccepted();
+
+        // when
+        // Al parar el servicio se escriben las reviews de la cola.
+        reviewHandler.stopWriteBehind();
+
+        // then
+        verify(reviewRepository, times(2)).insertAllUnordered(anyList());
+        verify(reviewStatsRepository).addRatings(1L, List.of(9.0));
+    }
+
+    @Test
+    void addReviewWithValidationsTest() {
+        // given
+        var review = new Review(null, null, "Awesome Movie", -9.0);
+
+        // when
+        webTestClient.post()
+                .uri(REVIEW_URL)
+                .bodyValue(review)
+                .exchange()
+                // then
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("review.movieInfoId must not be null,review.rating: please pass a non-negative value");
+    }
+}
@@ -0,0 +1,126 @@
+package com.reactivespring.util;
+
+import com.reactivespring.domain.Review;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReviewWriteBehindQueueTest {
+    List<List<Review>> batches = new CopyOnWriteArrayList<>();
+
+    @Test
+    void offerRejectsReviewsWhenFullTest() {
+        // given
+        var writeBehindQueue = new ReviewWriteBehindQueue(2, 10, Duration.ofHours(1), Duration.ofMillis(10),
+                this::write);
+
+        // then
+        assertTrue(writeBehindQueue.offer(review("1")));
+        assertTrue(writeBehindQueue.offer(review("2")));
+        assertFalse(writeBehindQueue.offer(review("3")));
+        assertEquals(2, writeBehindQueue.size());
+    }
+
+    @Test
+    void flushWritesInBatchesTest() {
+        // given
+        var writeBehindQueue = new ReviewWriteBehindQueue(10, 2, Duration.ofHours(1), Duration.ofMillis(10),
+                this::write);
+
+        for(var i = 1; i <= 5; i++)
+            writeBehindQueue.offer(review(String.valueOf(i)));
+
+        // when
+        StepVerifier.create(writeBehindQueue.flush())
+                .verifyComplete();
+
+        // then
+        assertEquals(List.of(List.of("1", "2"), List.of("3", "4"), List.of("5")), getIds(batches));
+        assertEquals(0, writeBehindQueue.size());
+    }
+
+    @Test
+    void reviewsAreWrittenInTheBackgroundTest() throws InterruptedException {
+        // given
+        var writeBehindQueue = new ReviewWriteBehindQueue(10, 10, Duration.ofMillis(10), Duration.ofMillis(10),
+                this::write);
+        writeBehindQueue.start();
+
+        // when
+        writeBehindQueue.offer(review("1"));
+        writeBehindQueue.offer(review("2"));
+
+        // then
+        for(var i = 0; i < 50 && batches.isEmpty(); i++)
+            Thread.sleep(100);
+
+        assertEquals(List.of(List.of("1", "2")), getIds(batches));
+
+        writeBehindQueue.close(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void closeDrainsTheQueueTest() {
+        // given
+        var writeBehindQueue = new ReviewWriteBehindQueue(10, 2, Duration.ofHours(1), Duration.ofMillis(10),
+                this::write);
+        writeBehindQueue.start();
+
+        writeBehindQueue.offer(review("1"));
+        writeBehindQueue.offer(review("2"));
+        writeBehindQueue.offer(review("3"));
+
+        // when
+        writeBehindQueue.close(Duration.ofSeconds(5));
+
+        // then
+        assertEquals(List.of(List.of("1", "2"), List.of("3")), getIds(batches));
+        // Una vez cerrada, la cola no acepta más reviews.
+        assertFalse(writeBehindQueue.offer(review("4")));
+    }
+
+    @Test
+    void failedWritesAreRetriedTest() {
+        // given
+        var attempts = new AtomicInteger();
+        var writeBehindQueue = new ReviewWriteBehindQueue(10, 10, Duration.ofHours(1), Duration.ofMillis(10),
+                reviews -> attempts.incrementAndGet() == 1 ? Mono.error(new RuntimeException("Timed out"))
+                        : write(reviews));
+
+        writeBehindQueue.offer(review("1"));
+
+        // when
+        StepVerifier.create(writeBehindQueue.flush())
+                .verifyComplete();
+
+        // then
+        assertEquals(2, attempts.get());
+        assertEquals(List.of(List.of("1")), getIds(batches));
+    }
+
+    private Mono<Void> write(List<Review> reviews) {
+        return Mono.fromRunnable(() -> batches.add(new ArrayList<>(reviews)));
+    }
+
+    private static Review review(String reviewId) {
+        return new Review(reviewId, 1L, "Awesome Movie", 9.0);
+    }
+
+    private static List<List<String>> getIds(List<List<Review>> batches) {
+        return batches.stream()
+                .map(batch -> batch.stream()
+                        // Versión simplificada de la expresión "review -> review.getReviewId()"
+                        .map(Review::getReviewId)
+                        .collect(Collectors.toList()))
+                .collect(Collectors.toList());
+    }
+}
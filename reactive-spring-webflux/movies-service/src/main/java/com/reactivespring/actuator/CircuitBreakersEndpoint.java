@@ -0,0 +1,62 @@
+package com.reactivespring.actuator;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+// Endpoint de Actuator que muestra el estado de los circuit breakers de cada servicio invocado
+// (Por ejemplo: "/actuator/circuitbreakers" o "/actuator/circuitbreakers/moviesInfo").
+
+@AllArgsConstructor
+@Component
+@Endpoint(id = "circuitbreakers")
+public class CircuitBreakersEndpoint {
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+
+    @ReadOperation
+    public Map<String, CircuitBreakerDetails> circuitBreakers() {
+        var circuitBreakers = new TreeMap<String, CircuitBreakerDetails>();
+
+        circuitBreakerRegistry.getAllCircuitBreakers()
+                .forEach(circuitBreaker -> circuitBreakers.put(circuitBreaker.getName(), toDetails(circuitBreaker)));
+
+        return circuitBreakers;
+    }
+
+    // Devuelve null si no existe el circuit breaker, lo que se traduce en una respuesta con el código 404.
+    @ReadOperation
+    public CircuitBreakerDetails circuitBreaker(@Selector String name) {
+        return circuitBreakerRegistry.find(name)
+                // Versión simplificada de la expresión "circuitBreaker -> toDetails(circuitBreaker)"
+                .map(this::toDetails)
+                .orElse(null);
+    }
+
+    private CircuitBreakerDetails toDetails(CircuitBreaker circuitBreaker) {
+        var metrics = circuitBreaker.getMetrics();
+
+        return new CircuitBreakerDetails(circuitBreaker.getState().name(), metrics.getFailureRate(),
+                metrics.getSlowCallRate(), metrics.getNumberOfBufferedCalls(), metrics.getNumberOfFailedCalls(),
+                metrics.getNumberOfSlowCalls(), metrics.getNumberOfNotPermittedCalls());
+    }
+
+    @Value
+    public static class CircuitBreakerDetails {
+        String state;
+        // Los porcentajes valen -1 mientras no se alcanza el número mínimo de llamadas.
+        float failureRate;
+        float slowCallRate;
+        int bufferedCalls;
+        int failedCalls;
+        int slowCalls;
+        long notPermittedCalls;
+    }
+}
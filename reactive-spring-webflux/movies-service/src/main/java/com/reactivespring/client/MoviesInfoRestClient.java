@@ -1,30 +1,124 @@
 package com.reactivespring.client;
 
+import com.reactivespring.config.CircuitBreakerConfiguration;
+import com.reactivespring.config.RestClientProperties;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoLookup;
 import com.reactivespring.exception.MoviesInfoClientException;
 import com.reactivespring.exception.MoviesInfoServerException;
+import com.reactivespring.util.DownstreamMetricsFilter;
+import com.reactivespring.util.ReadThroughCache;
+import com.reactivespring.util.RequestHedger;
+import com.reactivespring.util.RetryBudget;
 import com.reactivespring.util.RetryUtil;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 @Component
 public class MoviesInfoRestClient {
     private final WebClient webClient;
     private final String moviesInfoUrl;
+    private final ReadThroughCache<MovieInfo> movieInfoCache;
+    private final RetryBudget retryBudget;
+    private final Retry retrySpec;
+    private final Duration timeout;
+    private final CircuitBreaker circuitBreaker;
+    private final RequestHedger requestHedger;
+    private final Counter notModifiedRevalidations;
+    private final Counter modifiedRevalidations;
 
-    public MoviesInfoRestClient(WebClient webClient, @Value("${restClient.moviesInfoUrl}") String moviesInfoUrl) {
+    public MoviesInfoRestClient(@Qualifier("moviesInfoWebClient") WebClient webClient,
+                                @Value("${restClient.moviesInfoUrl}") String moviesInfoUrl,
+                                RestClientProperties restClientProperties, MeterRegistry meterRegistry,
+                                CircuitBreakerRegistry circuitBreakerRegistry) {
         this.webClient = webClient;
         this.moviesInfoUrl = moviesInfoUrl;
+
+        this.timeout = restClientProperties.getMoviesInfo().getTimeout();
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker(CircuitBreakerConfiguration.MOVIES_INFO);
+
+        var retryProperties = restClientProperties.getMoviesInfo().getRetry();
+        this.retryBudget = new RetryBudget("moviesInfo", retryProperties, meterRegistry);
+        this.retrySpec = RetryUtil.getRetrySpec(retryProperties, retryBudget);
+        this.requestHedger = new RequestHedger("moviesInfo", restClientProperties.getMoviesInfo().getHedge(),
+                meterRegistry);
+
+        // Porcentaje de revalidaciones de la caché que no necesitan descargar de nuevo el MovieInfo.
+        this.notModifiedRevalidations = Counter.builder("cache.revalidations")
+                .description("Conditional requests sent to revalidate cached entries")
+                .tag("cache", "movieInfo")
+                .tag("result", "not_modified")
+                .register(meterRegistry);
+        this.modifiedRevalidations = Counter.builder("cache.revalidations")
+                .description("Conditional requests sent to revalidate cached entries")
+                .tag("cache", "movieInfo")
+                .tag("result", "modified")
+                .register(meterRegistry);
+
+        var cacheProperties = restClientProperties.getMovieInfoCache();
+        this.movieInfoCache = cacheProperties.isEnabled()
+                // Versión simplificada de las expresiones "movieId -> fetchMovieInfo(movieId)",
+                // "(movieId, cachedMovieInfo) -> revalidateMovieInfo(movieId, cachedMovieInfo)" y
+                // "movieInfo -> estimateSize(movieInfo)"
+                ? new ReadThroughCache<>("movieInfo", cacheProperties, this::fetchMovieInfo, this::revalidateMovieInfo,
+                        MoviesInfoRestClient::estimateSize, meterRegistry)
+                : null;
     }
 
     public Mono<MovieInfo> retrieveMovieInfo(String movieId) {
+        if(movieInfoCache != null)
+            return movieInfoCache.get(movieId);
+
+        return fetchMovieInfo(movieId);
+    }
+
+    private Mono<MovieInfo> fetchMovieInfo(String movieId) {
+        return fetchMovieInfo(movieId, null);
+    }
+
+    // Cuando caduca una copia en caché, se pide el MovieInfo con la cabecera "If-None-Match". Si no ha cambiado,
+    // MoviesInfoService responde "304 Not Modified" sin cuerpo y se sigue usando la copia en caché.
+    private Mono<MovieInfo> revalidateMovieInfo(String movieId, MovieInfo cachedMovieInfo) {
+        // Los MovieInfo sin versión no tienen "ETag", así que hay que volver a descargarlos.
+        if(cachedMovieInfo.getVersion() == null)
+            return fetchMovieInfo(movieId);
+
+        return fetchMovieInfo(movieId, cachedMovieInfo)
+                .doOnNext(movieInfo -> {
+                    if(movieInfo == cachedMovieInfo)
+                        notModifiedRevalidations.increment();
+                    else
+                        modifiedRevalidations.increment();
+                });
+    }
+
+    private Mono<MovieInfo> fetchMovieInfo(String movieId, MovieInfo cachedMovieInfo) {
         return webClient.get()
                 .uri(moviesInfoUrl.concat("/{id}"), movieId)
+                .headers(httpHeaders -> {
+                    if(cachedMovieInfo != null)
+                        httpHeaders.setIfNoneMatch("\"" + cachedMovieInfo.getVersion() + "\"");
+                })
+                // Contador de intentos de esta llamada para las métricas de latencia(ver "DownstreamMetricsFilter").
+                .attribute(DownstreamMetricsFilter.ATTEMPT_ATTRIBUTE, new AtomicInteger())
                 .retrieve()
                 // Manejador de errores para las respuestas con errores de tipo 4xx.
                 // Versión simplificada de la expresión "httpStatus -> httpStatus.is4xxClientError()".
@@ -55,13 +149,83 @@ public class MoviesInfoRestClient {
                             .flatMap(responseBody -> Mono.error(new MoviesInfoServerException(
                                     "Server Exception in MoviesInfoService: " + responseBody)));
                 })
-                .bodyToMono(MovieInfo.class)
+                .toEntity(MovieInfo.class)
+                .flatMap(responseEntity -> Mono.justOrEmpty(responseEntity.getStatusCode() == HttpStatus.NOT_MODIFIED
+                        ? cachedMovieInfo
+                        : responseEntity.getBody()))
+                // Si la respuesta tarda más de lo habitual, se lanza una segunda petición idéntica y nos quedamos con
+                // la primera que responda(solo si está activado en la configuración).
+                // Versión simplificada de la expresión "call -> requestHedger.execute(call)"
+                .transform(requestHedger::execute)
+                // Cada llamada(incluido cada reintento) tiene un tiempo máximo de espera y pasa por el circuit
+                // breaker del servicio. Si el circuito está abierto, la llamada falla al instante sin reintentos.
+                .timeout(timeout)
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
                 // Realiza un reintento en caso de fallo o excepción(el reintento ocurre inmediatamente después del fallo)
                 //.retry()
                 // Realiza n reintentos en caso de fallo o excepción(los reintentos ocurren inmediatamente después del fallo)
                 //.retry(3)
                 // Podemos configurar o detallar más los reintentos usando este método "retryWhen".
-                .retryWhen(RetryUtil.getRetrySpec())
+                .retryWhen(retrySpec)
+                // Cada llamada cuenta una única vez en el presupuesto de reintentos, independientemente de los
+                // reintentos que se realicen.
+                .doOnSubscribe(subscription -> retryBudget.recordRequest())
                 .log();
     }
+
+    // Recupera en una única llamada todos los MovieInfo de los ids indicados con el endpoint "lookup"(Por ejemplo:
+    // "POST /v1/movieinfos/lookup" con el cuerpo {"ids": ["1", "2"]}). Los ids van en el cuerpo para no tener el límite
+    // de tamaño de la URL. La respuesta también indica los ids que no existen("missingIds"): solo se registran en el log
+    // y el flujo emite únicamente los MovieInfo encontrados, en el orden de los ids pedidos.
+    public Flux<MovieInfo> retrieveMovieInfos(List<String> movieIds) {
+        return webClient.post()
+                .uri(moviesInfoUrl + "/lookup")
+                .bodyValue(Map.of("ids", movieIds))
+                .attribute(DownstreamMetricsFilter.ATTEMPT_ATTRIBUTE, new AtomicInteger())
+                .retrieve()
+                // Manejador de errores para las respuestas con errores de tipo 4xx.
+                .onStatus(HttpStatus::is4xxClientError, clientResponse -> {
+                    log.info("Status code is: {}", clientResponse.statusCode().value());
+
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(responseBody -> Mono.error(new MoviesInfoClientException(responseBody,
+                                    clientResponse.statusCode().value())));
+                })
+                // Manejador de errores para las respuestas con errores de tipo 5xx.
+                .onStatus(HttpStatus::is5xxServerError, clientResponse -> {
+                    log.info("Status code is: {}", clientResponse.statusCode().value());
+
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(responseBody -> Mono.error(new MoviesInfoServerException(
+                                    "Server Exception in MoviesInfoService: " + responseBody)));
+                })
+                .bodyToMono(MovieInfoLookup.class)
+                .timeout(timeout)
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .retryWhen(retrySpec)
+                .doOnSubscribe(subscription -> retryBudget.recordRequest())
+                .doOnNext(movieInfoLookup -> {
+                    if(movieInfoLookup.getMissingIds() != null && !movieInfoLookup.getMissingIds().isEmpty())
+                        log.info("MovieInfos not found: {}", movieInfoLookup.getMissingIds());
+                })
+                // Versión simplificada de la expresión "movieInfoLookup -> movieInfoLookup.getMovieInfos()"
+                .flatMapIterable(MovieInfoLookup::getMovieInfos);
+    }
+
+    // Estimación aproximada del tamaño en bytes de un MovieInfo en memoria: una cabecera fija por cada objeto más
+    // 2 bytes por cada carácter de sus cadenas de texto.
+    private static int estimateSize(MovieInfo movieInfo) {
+        var size = 64 + stringSize(movieInfo.getMovieInfoId()) + stringSize(movieInfo.getName());
+
+        if(movieInfo.getCast() != null) {
+            size += 16 + movieInfo.getCast().size() * 8;
+            size += movieInfo.getCast().stream().mapToInt(MoviesInfoRestClient::stringSize).sum();
+        }
+
+        return size;
+    }
+
+    private static int stringSize(String value) {
+        return value == null ? 0 : 40 + value.length() * 2;
+    }
 }
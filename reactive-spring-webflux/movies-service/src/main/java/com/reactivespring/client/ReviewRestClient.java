@@ -1,49 +1,123 @@
 package com.reactivespring.client;
 
+import com.reactivespring.config.CircuitBreakerConfiguration;
+import com.reactivespring.config.RestClientProperties;
 import com.reactivespring.domain.Review;
 import com.reactivespring.exception.ReviewsServerException;
+import com.reactivespring.util.DownstreamMetricsFilter;
+import com.reactivespring.util.RetryBudget;
 import com.reactivespring.util.RetryUtil;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 @Component
 public class ReviewRestClient {
     private final WebClient webClient;
     private final String reviewsUrl;
+    private final RetryBudget retryBudget;
+    private final Retry retrySpec;
+    private final Duration timeout;
+    private final CircuitBreaker circuitBreaker;
 
-    public ReviewRestClient(WebClient webClient, @Value("${restClient.reviewsUrl}") String reviewsUrl) {
+    public ReviewRestClient(@Qualifier("reviewsWebClient") WebClient webClient,
+                            @Value("${restClient.reviewsUrl}") String reviewsUrl,
+                            RestClientProperties restClientProperties, MeterRegistry meterRegistry,
+                            CircuitBreakerRegistry circuitBreakerRegistry) {
         this.webClient = webClient;
         this.reviewsUrl = reviewsUrl;
+
+        this.timeout = restClientProperties.getReviews().getTimeout();
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker(CircuitBreakerConfiguration.REVIEWS);
+
+        var retryProperties = restClientProperties.getReviews().getRetry();
+        this.retryBudget = new RetryBudget("reviews", retryProperties, meterRegistry);
+        this.retrySpec = RetryUtil.getRetrySpec(retryProperties, retryBudget);
     }
 
     public Flux<Review> retrieveReviews(String movieId) {
+        return retrieveReviews(List.of(movieId));
+    }
+
+    // Recupera en una única llamada las reviews de todas las películas indicadas
+    // (Por ejemplo: "/v1/reviews?movie-info-id=1&movie-info-id=2").
+    public Flux<Review> retrieveReviews(List<String> movieIds) {
         var uri = UriComponentsBuilder.fromUriString(reviewsUrl)
-                .queryParam("movie-info-id", movieId)
+                .queryParam("movie-info-id", movieIds)
                 .buildAndExpand().toUriString();
 
         return webClient.get()
                 .uri(uri)
+                // El listado en JSON de ReviewsService está paginado. En "application/x-ndjson" devuelve todas las
+                // reviews de las películas en streaming.
+                .accept(MediaType.APPLICATION_NDJSON)
+                // Contador de intentos de esta llamada para las métricas de latencia(ver "DownstreamMetricsFilter").
+                .attribute(DownstreamMetricsFilter.ATTEMPT_ATTRIBUTE, new AtomicInteger())
                 .retrieve()
                 // Manejador de errores para las respuestas con errores de tipo 5xx.
                 // Versión simplificada de la expresión "httpStatus -> httpStatus.is5xxServerError()".
-                .onStatus(HttpStatus::is5xxServerError, clientResponse -> {
-                    log.info("Status code is: {}", clientResponse.statusCode().value());
-
-                    // En cualquier otro caso, devolvemos nuestra excepción personalizada "ReviewsServerException"
-                    // con la respuesta y el código de estado recibidos del cliente.
-                    return clientResponse.bodyToMono(String.class)
-                            .flatMap(responseBody -> Mono.error(new ReviewsServerException(
-                                    "Server Exception in ReviewService: " + responseBody)));
-                })
+                .onStatus(HttpStatus::is5xxServerError, ReviewRestClient::toServerException)
                 .bodyToFlux(Review.class)
+                // Tiempo máximo de espera y circuit breaker del servicio ReviewsService para cada llamada.
+                .timeout(timeout)
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
                 // Podemos configurar o detallar más los reintentos usando este método "retryWhen".
-                .retryWhen(RetryUtil.getRetrySpec());
+                .retryWhen(retrySpec)
+                // Cada llamada cuenta una única vez en el presupuesto de reintentos, independientemente de los
+                // reintentos que se realicen.
+                .doOnSubscribe(subscription -> retryBudget.recordRequest());
+    }
+
+    // Recupera en una única llamada las reviews de todas las películas indicadas ya agrupadas por el id de la película
+    // (Por ejemplo: "/v1/reviews/grouped?movie-info-id=1&movie-info-id=2"). Todas las películas pedidas aparecen en la
+    // respuesta aunque no tengan reviews. Sin "limitPerMovie" se devuelven todas las reviews de cada película.
+    public Mono<Map<String, List<Review>>> retrieveGroupedReviews(List<String> movieIds, Integer limitPerMovie) {
+        var uriBuilder = UriComponentsBuilder.fromUriString(reviewsUrl + "/grouped")
+                .queryParam("movie-info-id", movieIds);
+
+        if(limitPerMovie != null)
+            uriBuilder.queryParam("limit-per-movie", limitPerMovie);
+
+        return webClient.get()
+                .uri(uriBuilder.buildAndExpand().toUriString())
+                .attribute(DownstreamMetricsFilter.ATTEMPT_ATTRIBUTE, new AtomicInteger())
+                .retrieve()
+                // Versión simplificada de la expresión "httpStatus -> httpStatus.is5xxServerError()".
+                .onStatus(HttpStatus::is5xxServerError, ReviewRestClient::toServerException)
+                .bodyToMono(new ParameterizedTypeReference<Map<String, List<Review>>>() {})
+                .timeout(timeout)
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .retryWhen(retrySpec)
+                .doOnSubscribe(subscription -> retryBudget.recordRequest());
+    }
+
+    // En cualquier otro caso, devolvemos nuestra excepción personalizada "ReviewsServerException" con la respuesta y el
+    // código de estado recibidos del cliente.
+    private static Mono<? extends Throwable> toServerException(ClientResponse clientResponse) {
+        log.info("Status code is: {}", clientResponse.statusCode().value());
+
+        return clientResponse.bodyToMono(String.class)
+                .flatMap(responseBody -> Mono.error(new ReviewsServerException(
+                        "Server Exception in ReviewService: " + responseBody)));
     }
 }
@@ -0,0 +1,55 @@
+package com.reactivespring.config;
+
+import com.reactivespring.exception.MoviesInfoServerException;
+import com.reactivespring.exception.ReviewsServerException;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+
+import java.util.concurrent.TimeoutException;
+
+// Configuración de un circuit breaker por cada servicio invocado(MoviesInfoService y ReviewsService). Cuando un
+// servicio falla o responde lento de forma continuada, el circuito se abre y las llamadas fallan al instante con una
+// excepción de tipo "CallNotPermittedException" en lugar de quedarse esperando.
+
+@Configuration
+public class CircuitBreakerConfiguration {
+    public static final String MOVIES_INFO = "moviesInfo";
+    public static final String REVIEWS = "reviews";
+
+    @Bean
+    public CircuitBreakerRegistry circuitBreakerRegistry(RestClientProperties restClientProperties,
+                                                         MeterRegistry meterRegistry) {
+        var circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+
+        circuitBreakerRegistry.circuitBreaker(MOVIES_INFO,
+                createConfig(restClientProperties.getMoviesInfo().getCircuitBreaker()));
+        circuitBreakerRegistry.circuitBreaker(REVIEWS,
+                createConfig(restClientProperties.getReviews().getCircuitBreaker()));
+
+        // Publica el estado y las llamadas de cada circuit breaker como métricas("resilience4j.circuitbreaker.*").
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakerRegistry).bindTo(meterRegistry);
+
+        return circuitBreakerRegistry;
+    }
+
+    private CircuitBreakerConfig createConfig(RestClientProperties.CircuitBreaker properties) {
+        // Solo cuentan como fallos los errores del servidor, los errores de conexión y los timeouts. El resto de
+        // errores(por ejemplo, un 404) no indican que el servicio esté caído.
+        return CircuitBreakerConfig.custom()
+                .failureRateThreshold(properties.getFailureRateThreshold())
+                .slowCallRateThreshold(properties.getSlowCallRateThreshold())
+                .slowCallDurationThreshold(properties.getSlowCallDurationThreshold())
+                .slidingWindowSize(properties.getSlidingWindowSize())
+                .minimumNumberOfCalls(properties.getMinimumNumberOfCalls())
+                .waitDurationInOpenState(properties.getWaitDurationInOpenState())
+                .permittedNumberOfCallsInHalfOpenState(properties.getPermittedNumberOfCallsInHalfOpenState())
+                .recordExceptions(MoviesInfoServerException.class, ReviewsServerException.class,
+                        WebClientRequestException.class, TimeoutException.class)
+                .build();
+    }
+}
@@ -0,0 +1,153 @@
+package com.reactivespring.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+// Propiedades de configuración de los clientes de los servicios MoviesInfoService y ReviewsService definidas bajo
+// la clave "restClient" del archivo "application.yml".
+
+@Data
+@ConfigurationProperties(prefix = "rest-client")
+public class RestClientProperties {
+    private Batch batch = new Batch();
+    private Cache movieInfoCache = new Cache();
+    private Downstream moviesInfo = new Downstream();
+    private Downstream reviews = new Downstream();
+
+    // Tiempo máximo que se esperan las reviews de una película. Si se supera, o si ReviewsService falla, la película
+    // se devuelve con las reviews recibidas hasta ese momento(o sin reviews) y marcada como degradada.
+    // Incluye los reintentos de "reviews.retry": al vencer se cancela el intento o la espera en curso. Con los valores
+    // por defecto las esperas entre reintentos suman como mucho 0,7 segundos(100 + 200 + 400 ms), así que solo se
+    // reintentan los errores rápidos de ReviewsService. Un intento que falla por "reviews.timeout"(5 segundos) nunca se
+    // reintenta dentro del tiempo límite.
+    private Duration reviewsDeadline = Duration.ofSeconds(1);
+
+    @Data
+    public static class Batch {
+        // Número máximo de ids de películas que se aceptan en una misma petición.
+        private int maxIds = 50;
+
+        // Número de ids de películas que se envían en cada llamada a los servicios MoviesInfoService y ReviewsService.
+        private int chunkSize = 25;
+
+        // Número máximo de grupos de ids que se procesan a la vez. Cada grupo realiza 2 llamadas en paralelo(una a
+        // cada servicio), por lo que el número de llamadas simultáneas nunca supera el doble de este valor.
+        private int concurrency = 2;
+
+        // Número máximo de reviews de cada película. Sin valor se devuelven todas las reviews.
+        private Integer reviewsPerMovie;
+    }
+
+    // Configuración propia de cada uno de los servicios invocados(MoviesInfoService y ReviewsService).
+    @Data
+    public static class Downstream {
+        // Tiempo máximo de espera de cada llamada(incluido cada reintento).
+        private Duration timeout = Duration.ofSeconds(5);
+        private Retry retry = new Retry();
+        private CircuitBreaker circuitBreaker = new CircuitBreaker();
+        private Hedge hedge = new Hedge();
+        private Pool pool = new Pool();
+    }
+
+    // Configuración del pool de conexiones HTTP propio de cada servicio invocado. Las métricas del pool(conexiones
+    // activas, inactivas y pendientes) se publican como "reactor.netty.connection.provider.*" con el nombre del servicio.
+    @Data
+    public static class Pool {
+        private int maxConnections = 50;
+
+        // Número máximo de peticiones que pueden esperar a que quede libre una conexión y tiempo máximo de espera.
+        // Si se superan, la petición falla al instante en lugar de acumularse.
+        private int pendingAcquireMaxCount = 100;
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(5);
+
+        // Las conexiones inactivas o demasiado antiguas se cierran. La revisión se hace en segundo plano cada
+        // "evictionInterval".
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+        private Duration maxLifeTime = Duration.ofMinutes(5);
+        private Duration evictionInterval = Duration.ofSeconds(30);
+
+        private Duration connectTimeout = Duration.ofSeconds(2);
+        private Duration responseTimeout = Duration.ofSeconds(5);
+
+        // Usa HTTP/2 sin TLS(h2c) para multiplexar las peticiones sobre pocas conexiones. El servicio invocado debe
+        // tener activado HTTP/2.
+        private boolean h2c = false;
+    }
+
+    @Data
+    public static class Retry {
+        private int maxRetries = 3;
+
+        // Cada reintento espera un tiempo aleatorio entre 0 y "minBackoff * 2^reintento", sin superar "maxBackoff"
+        // (backoff exponencial con "full jitter").
+        private Duration minBackoff = Duration.ofMillis(100);
+        private Duration maxBackoff = Duration.ofSeconds(2);
+
+        // Presupuesto de reintentos: dentro de cada ventana de tiempo solo se permiten reintentos hasta el mayor
+        // valor entre "minRetriesPerWindow" y "budgetRatio" multiplicado por el número de peticiones de la ventana.
+        private double budgetRatio = 0.2;
+        private int minRetriesPerWindow = 10;
+        private Duration budgetWindow = Duration.ofSeconds(10);
+    }
+
+    @Data
+    public static class CircuitBreaker {
+        // Porcentaje de llamadas fallidas(errores 5xx, errores de conexión o timeouts) a partir del cual se abre el
+        // circuito.
+        private float failureRateThreshold = 50;
+
+        // Porcentaje de llamadas lentas a partir del cual se abre el circuito. Una llamada es lenta si tarda más de
+        // "slowCallDurationThreshold".
+        private float slowCallRateThreshold = 80;
+        private Duration slowCallDurationThreshold = Duration.ofSeconds(2);
+
+        // Número de últimas llamadas que se tienen en cuenta para calcular los porcentajes y número mínimo de
+        // llamadas necesarias para poder calcularlos.
+        private int slidingWindowSize = 20;
+        private int minimumNumberOfCalls = 10;
+
+        // Tiempo que el circuito permanece abierto antes de pasar al estado semiabierto y número de llamadas de
+        // prueba que se permiten en ese estado.
+        private Duration waitDurationInOpenState = Duration.ofSeconds(10);
+        private int permittedNumberOfCallsInHalfOpenState = 3;
+    }
+
+    // Configuración de las peticiones "hedged": si no llega la respuesta en el tiempo del percentil indicado de la
+    // latencia reciente, se lanza una segunda petición idéntica y nos quedamos con la primera que responda.
+    // Solo se usa en las peticiones GET de MoviesInfoService, que se pueden repetir sin efectos secundarios.
+    @Data
+    public static class Hedge {
+        private boolean enabled = false;
+        private double percentile = 0.95;
+
+        // Tiempo mínimo de espera antes de lanzar la segunda petición, para no duplicar las peticiones cuando la
+        // latencia es muy baja.
+        private Duration minDelay = Duration.ofMillis(10);
+
+        // Número de latencias recientes que se guardan y número mínimo de latencias necesarias para calcular el
+        // percentil. Mientras no se alcanza ese mínimo, no se lanzan segundas peticiones.
+        private int sampleSize = 1000;
+        private int minSamples = 100;
+    }
+
+    @Data
+    public static class Cache {
+        private boolean enabled = true;
+
+        // Tiempo durante el cual una entrada se considera actualizada.
+        private Duration ttl = Duration.ofMinutes(5);
+
+        // Una vez pasado el "ttl", durante este tiempo la entrada caducada se sigue devolviendo al instante mientras
+        // se actualiza en segundo plano. Pasado este tiempo, la entrada se elimina de la caché.
+        private Duration staleWhileRevalidate = Duration.ofMinutes(1);
+
+        // Número máximo de entradas de la caché. Se ignora si se indica el tamaño máximo estimado en bytes.
+        private long maximumSize = 10_000;
+
+        // Tamaño máximo estimado en memoria de todas las entradas de la caché(Por ejemplo: "64MB").
+        private DataSize maximumWeight;
+    }
+}
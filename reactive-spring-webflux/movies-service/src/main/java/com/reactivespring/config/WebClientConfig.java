@@ -1,14 +1,80 @@
 package com.reactivespring.config;
 
+import com.reactivespring.util.DownstreamMetricsFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+// Cada servicio invocado tiene su propio cliente WebClient con su propio pool de conexiones, de forma que si uno de los
+// servicios agota su pool no afecta a las llamadas al otro servicio.
 
 @Configuration
+@EnableConfigurationProperties(RestClientProperties.class)
 public class WebClientConfig {
 
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider moviesInfoConnectionProvider(RestClientProperties restClientProperties) {
+        return createConnectionProvider(CircuitBreakerConfiguration.MOVIES_INFO,
+                restClientProperties.getMoviesInfo().getPool());
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider reviewsConnectionProvider(RestClientProperties restClientProperties) {
+        return createConnectionProvider(CircuitBreakerConfiguration.REVIEWS,
+                restClientProperties.getReviews().getPool());
+    }
+
+    @Bean
+    public WebClient moviesInfoWebClient(WebClient.Builder builder, RestClientProperties restClientProperties,
+                                         @Qualifier("moviesInfoConnectionProvider") ConnectionProvider connectionProvider,
+                                         MeterRegistry meterRegistry) {
+        return createWebClient(builder, connectionProvider, restClientProperties.getMoviesInfo().getPool(),
+                new DownstreamMetricsFilter(CircuitBreakerConfiguration.MOVIES_INFO, meterRegistry));
+    }
+
     @Bean
-    public WebClient webClient(WebClient.Builder builder) {
-        return builder.build();
+    public WebClient reviewsWebClient(WebClient.Builder builder, RestClientProperties restClientProperties,
+                                      @Qualifier("reviewsConnectionProvider") ConnectionProvider connectionProvider,
+                                      MeterRegistry meterRegistry) {
+        return createWebClient(builder, connectionProvider, restClientProperties.getReviews().getPool(),
+                new DownstreamMetricsFilter(CircuitBreakerConfiguration.REVIEWS, meterRegistry));
+    }
+
+    private ConnectionProvider createConnectionProvider(String name, RestClientProperties.Pool properties) {
+        return ConnectionProvider.builder(name)
+                .maxConnections(properties.getMaxConnections())
+                .pendingAcquireMaxCount(properties.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(properties.getPendingAcquireTimeout())
+                .maxIdleTime(properties.getMaxIdleTime())
+                .maxLifeTime(properties.getMaxLifeTime())
+                .evictInBackground(properties.getEvictionInterval())
+                // Publica las métricas del pool en el registro global de Micrometer, que Spring Boot comparte con
+                // el registro de la aplicación.
+                .metrics(true)
+                .build();
+    }
+
+    private WebClient createWebClient(WebClient.Builder builder, ConnectionProvider connectionProvider,
+                                      RestClientProperties.Pool properties, DownstreamMetricsFilter metricsFilter) {
+        var httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) properties.getConnectTimeout().toMillis())
+                .responseTimeout(properties.getResponseTimeout());
+
+        if(properties.isH2c())
+            httpClient = httpClient.protocol(HttpProtocol.H2C);
+
+        // Clonamos el builder para no modificar el que se inyecta en otros beans.
+        return builder.clone()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .filter(metricsFilter)
+                .build();
     }
 }
@@ -1,7 +1,9 @@
 package com.reactivespring.controller;
 
+import com.reactivespring.exception.MovieDataException;
 import com.reactivespring.exception.MoviesInfoClientException;
 import com.reactivespring.exception.MoviesInfoServerException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -19,6 +21,21 @@ public class GlobalErrorHandler {
         return ResponseEntity.status(ex.getStatusCode()).body(ex.getMessage());
     }
 
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(MovieDataException.class)
+    public String handleMovieDataExceptions(MovieDataException ex) {
+        log.error("Exception caught in handleMovieDataExceptions is: {}", ex.getMessage());
+        return ex.getMessage();
+    }
+
+    // El circuit breaker de alguno de los servicios está abierto.
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    @ExceptionHandler(CallNotPermittedException.class)
+    public String handleCallNotPermittedExceptions(CallNotPermittedException ex) {
+        log.error("Exception caught in handleCallNotPermittedExceptions is: {}", ex.getMessage());
+        return ex.getMessage();
+    }
+
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     @ExceptionHandler(RuntimeException.class)
     public String handleRuntimeExceptions(RuntimeException ex) {
@@ -3,20 +3,79 @@ package com.reactivespring.controller;
 import com.reactivespring.domain.Movie;
 import com.reactivespring.service.MovieService;
 import lombok.AllArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.CRC32;
+
 @AllArgsConstructor
 @RestController
 @RequestMapping("/v1/movies")
 public class MovieController {
+    static final String REVIEWS_DEGRADED_HEADER = "X-Reviews-Degraded";
+
     private final MovieService movieService;
 
+    // La cabecera "X-Reviews-Degraded" indica si las reviews de la película pueden estar incompletas porque
+    // ReviewsService no respondió a tiempo.
+    // La respuesta incluye un "ETag" calculado a partir de la versión del MovieInfo y de las reviews. Si la petición
+    // incluye la cabecera "If-None-Match" con ese mismo "ETag", Spring responde "304 Not Modified" sin cuerpo.
     @GetMapping("/{id}")
-    public Mono<Movie> retrieveMovieById(@PathVariable(name = "id") String movieId) {
-        return movieService.retrieveMovieById(movieId);
+    public Mono<ResponseEntity<Movie>> retrieveMovieById(@PathVariable(name = "id") String movieId) {
+        return movieService.retrieveMovieById(movieId)
+                .map(movie -> {
+                    var responseBuilder = ResponseEntity.ok()
+                            .header(REVIEWS_DEGRADED_HEADER, String.valueOf(movie.isReviewsDegraded()));
+
+                    var eTag = getETag(movie);
+
+                    if(eTag != null)
+                        responseBuilder.eTag(eTag);
+
+                    return responseBuilder.body(movie);
+                });
+    }
+
+    // Variante en streaming del endpoint anterior para los clientes que aceptan "text/event-stream". Emite un evento
+    // "movieInfo" y después un evento "review" por cada review, sin esperar a tener todas las reviews.
+    @GetMapping(value = "/{id}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamMovieById(@PathVariable(name = "id") String movieId) {
+        return movieService.streamMovieById(movieId);
+    }
+
+    // Los ids se indican separados por comas(Por ejemplo: "/v1/movies?ids=1,2,3").
+    @GetMapping
+    public Flux<Movie> retrieveMoviesByIds(@RequestParam List<String> ids) {
+        return movieService.retrieveMoviesByIds(ids);
+    }
+
+    // "ETag" débil(la misma película puede serializarse de formas equivalentes) con la versión del MovieInfo y un
+    // checksum de las reviews. Las películas con reviews degradadas o sin versión no tienen "ETag", porque su contenido
+    // puede cambiar sin que cambie ninguna versión.
+    static String getETag(Movie movie) {
+        if(movie.isReviewsDegraded() || movie.getMovieInfo().getVersion() == null)
+            return null;
+
+        var checksum = new CRC32();
+
+        movie.getReviewList().stream()
+                // Las reviews se ordenan para que el checksum no dependa del orden en el que llegan.
+                .map(review -> review.getReviewId() + ":" + review.getVersion() + ":" + review.getRating() + ":"
+                        + review.getComment())
+                .sorted()
+                .forEach(review -> checksum.update((review + "\n").getBytes(StandardCharsets.UTF_8)));
+
+        return "W/\"" + movie.getMovieInfo().getVersion() + "-" + movie.getReviewList().size() + "-"
+                + Long.toHexString(checksum.getValue()) + "\"";
     }
 }
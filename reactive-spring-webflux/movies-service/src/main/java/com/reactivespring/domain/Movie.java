@@ -2,12 +2,20 @@ package com.reactivespring.domain;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 import java.util.List;
 
 @Data
+@NoArgsConstructor
 @AllArgsConstructor
 public class Movie {
     private MovieInfo movieInfo;
     private List<Review> reviewList;
+    // Indica que las reviews no se han podido recuperar a tiempo y que la lista puede estar incompleta o vacía.
+    private boolean reviewsDegraded;
+
+    public Movie(MovieInfo movieInfo, List<Review> reviewList) {
+        this(movieInfo, reviewList, false);
+    }
 }
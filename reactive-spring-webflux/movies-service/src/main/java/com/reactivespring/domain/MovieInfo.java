@@ -2,6 +2,7 @@ package com.reactivespring.domain;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 import org.springframework.validation.annotation.Validated;
 
 import javax.validation.constraints.NotBlank;
@@ -11,6 +12,7 @@ import java.time.LocalDate;
 import java.util.List;
 
 @Data
+@NoArgsConstructor
 @AllArgsConstructor
 @Validated
 public class MovieInfo {
@@ -27,4 +29,12 @@ public class MovieInfo {
     private List<@NotBlank(message = "movieInfo.cast must be present") String> cast;
 
     private LocalDate releaseDate;
+
+    // Versión del documento en MoviesInfoService. Se usa para calcular el "ETag" de las películas y para revalidar las copias
+    // en caché.
+    private Long version;
+
+    public MovieInfo(String movieInfoId, String name, Integer year, List<String> cast, LocalDate releaseDate) {
+        this(movieInfoId, name, year, cast, releaseDate, null);
+    }
 }
@@ -0,0 +1,17 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Respuesta de MoviesInfoService a la búsqueda de varios MovieInfo por sus ids.
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieInfoLookup {
+    private List<MovieInfo> movieInfos;
+    private List<String> missingIds;
+}
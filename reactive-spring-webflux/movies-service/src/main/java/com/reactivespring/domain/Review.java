@@ -2,8 +2,10 @@ package com.reactivespring.domain;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 @Data
+@NoArgsConstructor
 @AllArgsConstructor
 public class Review {
     private String reviewId;
@@ -12,4 +14,11 @@ public class Review {
 
     //@Min(value = 0L, message = "rating.negative : rating is negative and please pass a non-negative value")
     private Double rating;
+
+    // Versión del documento en ReviewsService. Se usa para calcular el "ETag" de las películas.
+    private Long version;
+
+    public Review(String reviewId, Long movieInfoId, String comment, Double rating) {
+        this(reviewId, movieInfoId, comment, rating, null);
+    }
 }
@@ -0,0 +1,8 @@
+package com.reactivespring.exception;
+
+public class MovieDataException extends RuntimeException {
+
+    public MovieDataException(String message) {
+        super(message);
+    }
+}
@@ -1,8 +1,14 @@
 package com.reactivespring.service;
 
 import com.reactivespring.domain.Movie;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 public interface MovieService {
     Mono<Movie> retrieveMovieById(String id);
+    Flux<Movie> retrieveMoviesByIds(List<String> ids);
+    Flux<ServerSentEvent<Object>> streamMovieById(String id);
 }
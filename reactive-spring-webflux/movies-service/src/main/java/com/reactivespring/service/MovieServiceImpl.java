@@ -2,16 +2,40 @@ package com.reactivespring.service;
 
 import com.reactivespring.client.MoviesInfoRestClient;
 import com.reactivespring.client.ReviewRestClient;
+import com.reactivespring.config.RestClientProperties;
 import com.reactivespring.domain.Movie;
-import lombok.AllArgsConstructor;
+import com.reactivespring.domain.Review;
+import com.reactivespring.exception.MovieDataException;
+import com.reactivespring.util.RequestCoalescer;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 
-@AllArgsConstructor
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Slf4j
 @Service
 public class MovieServiceImpl implements MovieService {
     private final MoviesInfoRestClient moviesInfoRestClient;
     private final ReviewRestClient reviewRestClient;
+    private final RestClientProperties restClientProperties;
+    private final RequestCoalescer<Movie> movieRequestCoalescer;
+
+    public MovieServiceImpl(MoviesInfoRestClient moviesInfoRestClient, ReviewRestClient reviewRestClient,
+                            RestClientProperties restClientProperties, MeterRegistry meterRegistry) {
+        this.moviesInfoRestClient = moviesInfoRestClient;
+        this.reviewRestClient = reviewRestClient;
+        this.restClientProperties = restClientProperties;
+        this.movieRequestCoalescer = new RequestCoalescer<>("movie", meterRegistry);
+    }
 
     // Una manera
     /*@Override
@@ -24,13 +48,118 @@ public class MovieServiceImpl implements MovieService {
                 });
     }*/
 
-    // Otra manera
+    // Las peticiones concurrentes de una misma película comparten una única pareja de llamadas a los servicios
+    // MoviesInfoService y ReviewsService.
     @Override
     public Mono<Movie> retrieveMovieById(String id) {
+        // Versión simplificada de la expresión "movieId -> aggregateMovie(movieId)"
+        return movieRequestCoalescer.execute(id, this::aggregateMovie);
+    }
+
+    // Otra manera
+    private Mono<Movie> aggregateMovie(String id) {
         var monoOfMovieInfo = moviesInfoRestClient.retrieveMovieInfo(id);
-        var monoOfListReviews = reviewRestClient.retrieveReviews(id).collectList().log();
+        var monoOfListReviews = retrieveReviewsWithDeadline(reviewRestClient.retrieveReviews(id)).log();
+
+        return monoOfMovieInfo.zipWith(monoOfListReviews,
+                (movieInfo, reviews) -> new Movie(movieInfo, reviews.getT1(), reviews.getT2()));
+    }
+
+    // Las reviews no deben retrasar ni hacer fallar la respuesta cuando MovieInfo ya está disponible. Si ReviewsService
+    // no termina antes del tiempo límite o falla, nos quedamos con las reviews recibidas hasta ese momento y las
+    // marcamos como degradadas(el segundo valor de la tupla).
+    private Mono<Tuple2<List<Review>, Boolean>> retrieveReviewsWithDeadline(Flux<Review> fluxOfReviews) {
+        var deadline = restClientProperties.getReviewsDeadline();
+
+        return Mono.defer(() -> {
+            var degraded = new AtomicBoolean();
+
+            return fluxOfReviews
+                    // El método "takeUntilOther" cancela la llamada a ReviewsService cuando vence el tiempo límite.
+                    .takeUntilOther(Mono.delay(deadline)
+                            .doOnNext(tick -> {
+                                log.warn("Reviews were not retrieved within {}", deadline);
+                                degraded.set(true);
+                            }))
+                    // Las reviews ya recibidas se conservan en la lista que construye el método "collectList".
+                    .onErrorResume(ex -> {
+                        log.warn("Reviews could not be retrieved: {}", ex.getMessage());
+                        degraded.set(true);
+                        return Flux.empty();
+                    })
+                    .collectList()
+                    .map(reviews -> Tuples.of(reviews, degraded.get()));
+        });
+    }
+
+    // Emite primero el MovieInfo y después cada Review a medida que se decodifica la respuesta de ReviewsService, sin
+    // acumular todas las reviews en memoria. Las dos llamadas se lanzan a la vez y el método "mergeSequential" mantiene
+    // el orden, guardando como mucho unas pocas reviews mientras llega el MovieInfo.
+    @Override
+    public Flux<ServerSentEvent<Object>> streamMovieById(String id) {
+        var fluxOfMovieInfo = moviesInfoRestClient.retrieveMovieInfo(id)
+                .map(movieInfo -> ServerSentEvent.builder((Object) movieInfo).event("movieInfo").build())
+                .flux();
+        var fluxOfReviews = reviewRestClient.retrieveReviews(id)
+                .map(review -> ServerSentEvent.builder((Object) review).event("review").build())
+                // Si ReviewsService falla, terminamos el flujo con un evento que indica que las reviews están
+                // incompletas en lugar de cortar la respuesta.
+                .onErrorResume(ex -> {
+                    log.warn("Reviews could not be streamed: {}", ex.getMessage());
+                    return Flux.just(ServerSentEvent.builder((Object) ex.getMessage()).event("reviewsDegraded").build());
+                });
+
+        return Flux.mergeSequential(fluxOfMovieInfo, fluxOfReviews);
+    }
+
+    @Override
+    public Flux<Movie> retrieveMoviesByIds(List<String> ids) {
+        var batch = restClientProperties.getBatch();
+
+        if(ids.size() > batch.getMaxIds())
+            return Flux.error(new MovieDataException("The maximum number of ids per request is " + batch.getMaxIds()));
+
+        // Agrupamos los ids en bloques de tamaño "chunkSize" y cada bloque se resuelve con una única llamada a cada
+        // servicio. El método "flatMapSequential" limita el número de bloques que se procesan a la vez y mantiene el
+        // orden de los ids recibidos en la respuesta.
+        return Flux.fromIterable(ids)
+                .distinct()
+                .buffer(batch.getChunkSize())
+                .flatMapSequential(this::retrieveMoviesChunk, batch.getConcurrency());
+    }
 
-        // Versión simplificada de la expresión "(movieInfo, listOfReviews) -> new Movie(movieInfo, listOfReviews)"
-        return monoOfMovieInfo.zipWith(monoOfListReviews, Movie::new);
+    // Las reviews de todas las películas del bloque llegan ya agrupadas por película en una única llamada.
+    private Flux<Movie> retrieveMoviesChunk(List<String> ids) {
+        var monoOfMovieInfos = moviesInfoRestClient.retrieveMovieInfos(ids).collectList();
+        var monoOfReviews = retrieveGroupedReviewsWithDeadline(reviewRestClient.retrieveGroupedReviews(ids,
+                restClientProperties.getBatch().getReviewsPerMovie()));
+
+        return monoOfMovieInfos.zipWith(monoOfReviews)
+                .flatMapMany(tuple -> {
+                    var reviewsByMovieId = tuple.getT2().getT1();
+                    var reviewsDegraded = tuple.getT2().getT2();
+
+                    return Flux.fromIterable(tuple.getT1())
+                            .map(movieInfo -> new Movie(movieInfo,
+                                    reviewsByMovieId.getOrDefault(movieInfo.getMovieInfoId(), new ArrayList<>()),
+                                    reviewsDegraded));
+                });
+    }
+
+    // Igual que "retrieveReviewsWithDeadline", pero como las reviews agrupadas llegan en una única respuesta, si no
+    // terminan antes del tiempo límite o fallan, las películas se devuelven sin reviews y marcadas como degradadas.
+    private Mono<Tuple2<Map<String, List<Review>>, Boolean>> retrieveGroupedReviewsWithDeadline(
+            Mono<Map<String, List<Review>>> monoOfReviewsByMovieId) {
+        var deadline = restClientProperties.getReviewsDeadline();
+
+        return monoOfReviewsByMovieId
+                .map(reviewsByMovieId -> Tuples.of(reviewsByMovieId, false))
+                // Una respuesta sin cuerpo equivale a no tener reviews.
+                .defaultIfEmpty(Tuples.of(Map.of(), false))
+                .timeout(deadline)
+                .onErrorResume(ex -> {
+                    log.warn("Reviews could not be retrieved within {}: {}", deadline, ex.getMessage());
+                    return Mono.just(Tuples.of(Map.of(), true));
+                });
     }
 }
@@ -0,0 +1,83 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Filtro de WebClient que mide la latencia de cada petición a un servicio(hasta recibir las cabeceras de la respuesta)
+// con un timer "client.requests" con histograma de percentiles. Las mediciones se etiquetan con el servicio, el código
+// de estado, el resultado y el número de intento.
+// Para saber el número de intento, el cliente debe añadir a la petición el atributo "ATTEMPT_ATTRIBUTE" con un contador
+// compartido por todos los intentos de la misma llamada(reintentos y peticiones "hedged").
+
+public class DownstreamMetricsFilter implements ExchangeFilterFunction {
+    public static final String ATTEMPT_ATTRIBUTE = DownstreamMetricsFilter.class.getName() + ".attempt";
+
+    private final String downstream;
+    private final MeterRegistry meterRegistry;
+
+    public DownstreamMetricsFilter(String downstream, MeterRegistry meterRegistry) {
+        this.downstream = downstream;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        // Cada suscripción es un nuevo intento de la petición, así que el contador y el tiempo de inicio se obtienen
+        // al suscribirse.
+        return Mono.defer(() -> {
+            var attempt = request.attribute(ATTEMPT_ATTRIBUTE)
+                    .map(counter -> ((AtomicInteger) counter).incrementAndGet())
+                    .orElse(1);
+            var sample = Timer.start(meterRegistry);
+
+            return next.exchange(request)
+                    .doOnSuccess(response -> sample.stop(getTimer(String.valueOf(response.rawStatusCode()),
+                            getOutcome(response.rawStatusCode()), attempt)))
+                    .doOnError(ex -> sample.stop(getTimer(ex instanceof WebClientRequestException ? "IO_ERROR"
+                            : "CLIENT_ERROR", "UNKNOWN", attempt)))
+                    // La petición se cancela cuando vence el tiempo máximo de espera o cuando gana la otra petición
+                    // "hedged".
+                    .doOnCancel(() -> sample.stop(getTimer("CLIENT_ERROR", "CANCELLED", attempt)));
+        });
+    }
+
+    private Timer getTimer(String status, String outcome, int attempt) {
+        return Timer.builder("client.requests")
+                .description("Latency of the requests to the downstream services")
+                .tag("downstream", downstream)
+                .tag("status", status)
+                .tag("outcome", outcome)
+                .tag("attempt", String.valueOf(attempt))
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static String getOutcome(int statusCode) {
+        var httpStatus = HttpStatus.resolve(statusCode);
+
+        if(httpStatus == null)
+            return "UNKNOWN";
+
+        switch(httpStatus.series()) {
+            case INFORMATIONAL:
+                return "INFORMATIONAL";
+            case SUCCESSFUL:
+                return "SUCCESS";
+            case REDIRECTION:
+                return "REDIRECTION";
+            case CLIENT_ERROR:
+                return "CLIENT_ERROR";
+            default:
+                return "SERVER_ERROR";
+        }
+    }
+}
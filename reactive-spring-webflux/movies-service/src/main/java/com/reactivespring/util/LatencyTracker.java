@@ -0,0 +1,50 @@
+package com.reactivespring.util;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+// Guarda las últimas latencias de un servicio en un buffer circular y calcula sus percentiles. Para no ordenar el
+// buffer en cada consulta, el percentil solo se vuelve a calcular cuando se han registrado suficientes latencias nuevas.
+
+public class LatencyTracker {
+    private static final int RECOMPUTE_INTERVAL = 50;
+
+    private final long[] samples;
+    private final int minSamples;
+    private int count;
+    private int next;
+
+    private int samplesSinceLastCompute = RECOMPUTE_INTERVAL;
+    private double lastPercentile = -1;
+    private Duration lastPercentileValue;
+
+    public LatencyTracker(int sampleSize, int minSamples) {
+        this.samples = new long[sampleSize];
+        this.minSamples = minSamples;
+    }
+
+    public synchronized void record(Duration latency) {
+        samples[next] = latency.toNanos();
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+        samplesSinceLastCompute++;
+    }
+
+    // Devuelve null mientras no haya suficientes latencias registradas.
+    public synchronized Duration getPercentile(double percentile) {
+        if(count < minSamples)
+            return null;
+
+        if(samplesSinceLastCompute >= RECOMPUTE_INTERVAL || percentile != lastPercentile) {
+            var sortedSamples = Arrays.copyOf(samples, count);
+            Arrays.sort(sortedSamples);
+
+            var index = (int) Math.ceil(percentile * count) - 1;
+            lastPercentileValue = Duration.ofNanos(sortedSamples[Math.max(0, Math.min(index, count - 1))]);
+            lastPercentile = percentile;
+            samplesSinceLastCompute = 0;
+        }
+
+        return lastPercentileValue;
+    }
+}
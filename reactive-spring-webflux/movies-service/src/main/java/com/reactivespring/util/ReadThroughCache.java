@@ -0,0 +1,87 @@
+package com.reactivespring.util;
+
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.reactivespring.config.RestClientProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+// Caché en memoria de lectura("read-through") con tamaño limitado, caducidad por entrada y una ventana
+// "stale-while-revalidate". Dentro de esa ventana, una entrada caducada se devuelve al instante mientras se lanza una
+// única actualización en segundo plano.
+// Si se indica una función de revalidación, las actualizaciones reciben el valor actual para que puedan pedir al
+// servicio solo los cambios(por ejemplo, con una petición condicional) en lugar de volver a cargar el valor.
+// Las métricas de aciertos, fallos y expulsiones se publican con los nombres "cache.gets", "cache.evictions", etc.
+
+public class ReadThroughCache<V> {
+    private final AsyncLoadingCache<String, V> cache;
+
+    public ReadThroughCache(String name, RestClientProperties.Cache properties, Function<String, Mono<V>> loader,
+                            ToIntFunction<V> weigher, MeterRegistry meterRegistry) {
+        this(name, properties, loader, null, weigher, meterRegistry);
+    }
+
+    public ReadThroughCache(String name, RestClientProperties.Cache properties, Function<String, Mono<V>> loader,
+                            BiFunction<String, V, Mono<V>> revalidator, ToIntFunction<V> weigher,
+                            MeterRegistry meterRegistry) {
+        this(name, properties, loader, revalidator, weigher, meterRegistry, Ticker.systemTicker(),
+                ForkJoinPool.commonPool());
+    }
+
+    ReadThroughCache(String name, RestClientProperties.Cache properties, Function<String, Mono<V>> loader,
+                     BiFunction<String, V, Mono<V>> revalidator, ToIntFunction<V> weigher, MeterRegistry meterRegistry,
+                     Ticker ticker, Executor executor) {
+        var builder = Caffeine.newBuilder()
+                .ticker(ticker)
+                .executor(executor)
+                // La entrada se elimina cuando termina la ventana "stale-while-revalidate".
+                .expireAfterWrite(properties.getTtl().plus(properties.getStaleWhileRevalidate()))
+                .recordStats();
+
+        // Una vez pasado el "ttl", la siguiente lectura devuelve el valor actual y lanza su actualización.
+        if(!properties.getStaleWhileRevalidate().isZero())
+            builder.refreshAfterWrite(properties.getTtl());
+
+        AsyncCacheLoader<String, V> cacheLoader = new AsyncCacheLoader<>() {
+            @Override
+            public CompletableFuture<V> asyncLoad(String key, Executor cacheExecutor) {
+                return loader.apply(key).toFuture();
+            }
+
+            @Override
+            public CompletableFuture<V> asyncReload(String key, V oldValue, Executor cacheExecutor) {
+                return revalidator != null
+                        ? revalidator.apply(key, oldValue).toFuture()
+                        : loader.apply(key).toFuture();
+            }
+        };
+
+        AsyncLoadingCache<String, V> asyncLoadingCache = properties.getMaximumWeight() != null
+                ? builder.maximumWeight(properties.getMaximumWeight().toBytes())
+                        .weigher((String key, V value) -> weigher.applyAsInt(value))
+                        .buildAsync(cacheLoader)
+                : builder.maximumSize(properties.getMaximumSize()).buildAsync(cacheLoader);
+
+        this.cache = CaffeineCacheMetrics.monitor(meterRegistry, asyncLoadingCache, name);
+    }
+
+    public Mono<V> get(String key) {
+        // Usamos una copia del futuro para que, si un suscriptor cancela, no se cancele la carga compartida con el
+        // resto de suscriptores. Las cargas que terminan con error no se guardan en la caché.
+        return Mono.fromFuture(() -> cache.get(key).copy());
+    }
+
+    void cleanUp() {
+        cache.synchronous().cleanUp();
+    }
+}
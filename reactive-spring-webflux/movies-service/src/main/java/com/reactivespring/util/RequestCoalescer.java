@@ -0,0 +1,73 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+// Clase de utilidad para agrupar(coalescing o "single-flight") las peticiones concurrentes que comparten una misma
+// clave. Mientras hay una llamada en curso para una clave, el resto de peticiones con esa misma clave se suscriben al
+// mismo flujo reactivo Mono y reciben el mismo resultado o el mismo error, en lugar de lanzar su propia llamada.
+
+public class RequestCoalescer<T> {
+    private final Map<String, Mono<T>> inFlight = new ConcurrentHashMap<>();
+    private final Counter requests;
+    private final Counter coalesced;
+
+    public RequestCoalescer(String name, MeterRegistry meterRegistry) {
+        this.requests = Counter.builder("coalescer.requests")
+                .description("Number of requests received by the coalescer")
+                .tag("name", name)
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("coalescer.coalesced")
+                .description("Number of requests served by a call already in flight")
+                .tag("name", name)
+                .register(meterRegistry);
+
+        // Proporción de peticiones que no han generado llamadas nuevas a los servicios.
+        Gauge.builder("coalescer.ratio", this, RequestCoalescer::getCoalescingRatio)
+                .description("Ratio of requests served by a call already in flight")
+                .tag("name", name)
+                .register(meterRegistry);
+        Gauge.builder("coalescer.in.flight", inFlight, Map::size)
+                .description("Number of calls currently in flight")
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    public Mono<T> execute(String key, Function<String, Mono<T>> call) {
+        return Mono.defer(() -> {
+            requests.increment();
+
+            var leader = new boolean[1];
+            // El método "cache" hace que todos los suscriptores compartan una única suscripción a la llamada original.
+            // La entrada se elimina en cuanto la llamada termina(con éxito o con error) para que las siguientes
+            // peticiones vuelvan a obtener datos actualizados. Usamos "doOnSuccess" y "doOnError" en lugar de "doFinally"
+            // porque se ejecutan antes de entregar el resultado a los suscriptores; así una petición que llegue justo
+            // después de recibir la respuesta anterior no puede reutilizar una llamada que ya ha terminado.
+            var sharedCall = inFlight.computeIfAbsent(key, k -> {
+                leader[0] = true;
+
+                return call.apply(k)
+                        .doOnSuccess(value -> inFlight.remove(k))
+                        .doOnError(ex -> inFlight.remove(k))
+                        .cache();
+            });
+
+            if(!leader[0])
+                coalesced.increment();
+
+            return sharedCall;
+        });
+    }
+
+    public double getCoalescingRatio() {
+        var totalRequests = requests.count();
+
+        return totalRequests == 0 ? 0 : coalesced.count() / totalRequests;
+    }
+}
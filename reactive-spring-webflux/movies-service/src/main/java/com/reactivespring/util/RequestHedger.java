@@ -0,0 +1,124 @@
+package com.reactivespring.util;
+
+import com.reactivespring.config.RestClientProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Clase de utilidad para lanzar peticiones "hedged". Si la petición no responde en el tiempo del percentil configurado
+// de la latencia reciente, se lanza una segunda petición idéntica. Nos quedamos con la primera que responda con éxito
+// y la otra se cancela.
+// El porcentaje de peticiones duplicadas es "client.hedge.fired / client.hedge.requests" y el porcentaje de veces que
+// gana la segunda petición es "client.hedge.wins / client.hedge.fired".
+
+public class RequestHedger {
+    private final RestClientProperties.Hedge properties;
+    private final LatencyTracker latencyTracker;
+    private final Counter requests;
+    private final Counter fired;
+    private final Counter wins;
+
+    public RequestHedger(String downstream, RestClientProperties.Hedge properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.latencyTracker = new LatencyTracker(properties.getSampleSize(), properties.getMinSamples());
+
+        this.requests = Counter.builder("client.hedge.requests")
+                .description("Requests that could be hedged")
+                .tag("downstream", downstream)
+                .register(meterRegistry);
+        this.fired = Counter.builder("client.hedge.fired")
+                .description("Requests for which a hedge request was fired")
+                .tag("downstream", downstream)
+                .register(meterRegistry);
+        this.wins = Counter.builder("client.hedge.wins")
+                .description("Hedge requests that answered before the original request")
+                .tag("downstream", downstream)
+                .register(meterRegistry);
+
+        Gauge.builder("client.hedge.delay", this, hedger -> {
+                    var hedgeDelay = hedger.getHedgeDelay();
+
+                    return hedgeDelay == null ? Double.NaN : hedgeDelay.toNanos() / 1_000_000.0;
+                })
+                .description("Current delay before firing a hedge request")
+                .tag("downstream", downstream)
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    // La petición debe ser un flujo reactivo Mono "cold", es decir, que cada suscripción lance una nueva petición.
+    public <T> Mono<T> execute(Mono<T> call) {
+        if(!properties.isEnabled())
+            return call;
+
+        return Mono.defer(() -> {
+            requests.increment();
+
+            var hedgeDelay = getHedgeDelay();
+
+            if(hedgeDelay == null)
+                return timed(call);
+
+            // El resultado de la segunda petición también se guarda aquí, para que la petición original pueda
+            // esperarlo si falla después de lanzar la segunda.
+            var hedgeResult = Sinks.<Tuple2<T, Boolean>>one();
+            var hedgeFired = new AtomicBoolean();
+
+            var hedge = Mono.delay(hedgeDelay)
+                    .flatMap(tick -> {
+                        hedgeFired.set(true);
+                        fired.increment();
+
+                        return timed(call).map(value -> Tuples.of(value, true));
+                    })
+                    .doOnNext(hedgeResult::tryEmitValue)
+                    .doOnError(hedgeResult::tryEmitError)
+                    // Un error de la segunda petición no cancela la original, que puede seguir en curso.
+                    .onErrorResume(ex -> Mono.never());
+            var primary = timed(call).map(value -> Tuples.of(value, false))
+                    // Si la petición original falla antes de que pase el tiempo de espera, no se lanza la segunda y
+                    // devolvemos el error. Si falla después, esperamos a la segunda y solo devolvemos el error de la
+                    // original si las dos fallan.
+                    .onErrorResume(ex -> hedgeFired.get()
+                            ? hedgeResult.asMono().onErrorMap(hedgeEx -> ex)
+                            : Mono.error(ex));
+
+            // El método "firstWithSignal" se queda con el primer flujo que emita una señal(un valor o un error) y
+            // cancela el resto. Como los errores de la segunda petición se ignoran, solo gana un error cuando la
+            // petición original falla antes de lanzar la segunda o cuando fallan las dos. Es decir, el comportamiento
+            // de "firstWithValue", pero sin esperar a la segunda petición para devolver el error de la original.
+            return Mono.firstWithSignal(primary, hedge)
+                    .map(tuple -> {
+                        if(tuple.getT2())
+                            wins.increment();
+
+                        return tuple.getT1();
+                    });
+        });
+    }
+
+    private Duration getHedgeDelay() {
+        var percentile = latencyTracker.getPercentile(properties.getPercentile());
+
+        if(percentile == null)
+            return null;
+
+        return percentile.compareTo(properties.getMinDelay()) > 0 ? percentile : properties.getMinDelay();
+    }
+
+    // Registramos la latencia de cada petición que termina con éxito.
+    private <T> Mono<T> timed(Mono<T> call) {
+        return Mono.defer(() -> {
+            var start = System.nanoTime();
+
+            return call.doOnSuccess(value -> latencyTracker.record(Duration.ofNanos(System.nanoTime() - start)));
+        });
+    }
+}
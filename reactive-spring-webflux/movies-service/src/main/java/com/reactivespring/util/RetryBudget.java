@@ -0,0 +1,91 @@
+package com.reactivespring.util;
+
+import com.reactivespring.config.RestClientProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.function.LongSupplier;
+
+// Presupuesto de reintentos de un servicio. Limita los reintentos a un porcentaje de las peticiones realizadas en una
+// ventana de tiempo deslizante, para que durante una caída del servicio los reintentos no multipliquen la carga.
+// La ventana se divide en varios intervalos y los intervalos más antiguos se van reutilizando.
+
+public class RetryBudget {
+    private static final int BUCKETS = 10;
+
+    private final double budgetRatio;
+    private final int minRetriesPerWindow;
+    private final long bucketNanos;
+    private final LongSupplier nanoClock;
+
+    private final long[] bucketIndexes = new long[BUCKETS];
+    private final long[] requests = new long[BUCKETS];
+    private final long[] retries = new long[BUCKETS];
+
+    private final Counter allowedRetries;
+    private final Counter rejectedRetries;
+
+    public RetryBudget(String downstream, RestClientProperties.Retry properties, MeterRegistry meterRegistry) {
+        this(downstream, properties, meterRegistry, System::nanoTime);
+    }
+
+    RetryBudget(String downstream, RestClientProperties.Retry properties, MeterRegistry meterRegistry,
+                LongSupplier nanoClock) {
+        this.budgetRatio = properties.getBudgetRatio();
+        this.minRetriesPerWindow = properties.getMinRetriesPerWindow();
+        this.bucketNanos = Math.max(1, properties.getBudgetWindow().toNanos() / BUCKETS);
+        this.nanoClock = nanoClock;
+
+        this.allowedRetries = Counter.builder("client.retries")
+                .description("Retries requested against the downstream retry budget")
+                .tag("downstream", downstream)
+                .tag("result", "allowed")
+                .register(meterRegistry);
+        this.rejectedRetries = Counter.builder("client.retries")
+                .description("Retries requested against the downstream retry budget")
+                .tag("downstream", downstream)
+                .tag("result", "rejected")
+                .register(meterRegistry);
+    }
+
+    public synchronized void recordRequest() {
+        requests[currentBucket()]++;
+    }
+
+    public synchronized boolean tryAcquireRetry() {
+        var bucket = currentBucket();
+        var totalRequests = 0L;
+        var totalRetries = 0L;
+
+        // Solo sumamos los intervalos que siguen dentro de la ventana.
+        for(var i = 0; i < BUCKETS; i++) {
+            if(bucketIndexes[bucket] - bucketIndexes[i] < BUCKETS) {
+                totalRequests += requests[i];
+                totalRetries += retries[i];
+            }
+        }
+
+        if(totalRetries >= Math.max(minRetriesPerWindow, (long) (totalRequests * budgetRatio))) {
+            rejectedRetries.increment();
+            return false;
+        }
+
+        retries[bucket]++;
+        allowedRetries.increment();
+        return true;
+    }
+
+    // Devuelve la posición del intervalo actual, vaciando antes los intervalos que se han quedado fuera de la ventana.
+    private int currentBucket() {
+        var bucketIndex = nanoClock.getAsLong() / bucketNanos;
+        var position = (int) Math.floorMod(bucketIndex, (long) BUCKETS);
+
+        if(bucketIndexes[position] != bucketIndex) {
+            bucketIndexes[position] = bucketIndex;
+            requests[position] = 0;
+            retries[position] = 0;
+        }
+
+        return position;
+    }
+}
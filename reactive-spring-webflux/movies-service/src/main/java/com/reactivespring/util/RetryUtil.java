@@ -1,26 +1,44 @@
 package com.reactivespring.util;
 
+import com.reactivespring.config.RestClientProperties;
 import com.reactivespring.exception.MoviesInfoServerException;
 import com.reactivespring.exception.ReviewsServerException;
-import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
 import reactor.util.retry.Retry;
 
 import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
 
 // Clase de utilidad para tener una configuración de los reintentos común a todos los clientes("MoviesInfoRestClient" y
 // "ReviewRestClien").
 
 public class RetryUtil {
 
-    public static Retry getRetrySpec() {
-        // En este caso, cada reintento ocurre cada segundo y se configura un máximo de 3 reintentos.
-        // Con el método "filter", indicamos que solo se hagan los reintentos para excepciones de
-        // tipo "MoviesInfoServerException" o de tipo "ReviewsServerException".
-        // Usamos el método "onRetryExhaustedThrow" para propagar la excepción original que causó el reintento al
-        // cliente que realizó la llamada. De lo contrario, si no usamos este método, la excepción original es
-        // sobrescrita por otra dentro del método "retryWhen".
-        return Retry.fixedDelay(3, Duration.ofSeconds(1))
-                .filter(ex -> ex instanceof MoviesInfoServerException || ex instanceof ReviewsServerException)
-                .onRetryExhaustedThrow(((retryBackoffSpec, retrySignal) -> Exceptions.propagate(retrySignal.failure())));
+    public static Retry getRetrySpec(RestClientProperties.Retry properties, RetryBudget retryBudget) {
+        // Solo se hacen los reintentos para excepciones de tipo "MoviesInfoServerException" o de tipo
+        // "ReviewsServerException", mientras no se supere el número máximo de reintentos y el presupuesto de
+        // reintentos del servicio lo permita.
+        // Cuando no se puede reintentar, propagamos la excepción original que causó el reintento al cliente que
+        // realizó la llamada.
+        return Retry.from(retrySignals -> retrySignals.concatMap(retrySignal -> {
+            var failure = retrySignal.failure();
+
+            if(!(failure instanceof MoviesInfoServerException || failure instanceof ReviewsServerException))
+                return Mono.error(failure);
+
+            if(retrySignal.totalRetries() >= properties.getMaxRetries() || !retryBudget.tryAcquireRetry())
+                return Mono.error(failure);
+
+            return Mono.delay(getBackoff(properties, retrySignal.totalRetries()));
+        }));
+    }
+
+    // Backoff exponencial con "full jitter": esperamos un tiempo aleatorio entre 0 y el backoff exponencial para que
+    // los reintentos de muchas peticiones no se sincronicen entre sí.
+    static Duration getBackoff(RestClientProperties.Retry properties, long retry) {
+        var exponentialBackoff = properties.getMinBackoff().toMillis() * (1L << Math.min(retry, 30));
+        var maxBackoff = Math.min(properties.getMaxBackoff().toMillis(), exponentialBackoff);
+
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(maxBackoff + 1));
     }
 }
@@ -0,0 +1,94 @@
+package com.reactivespring.controller;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+// Levanta un servidor WireMock en un puerto aleatorio para no compartirlo con el resto de pruebas.
+@AutoConfigureWireMock(port = 0)
+// Configuramos el circuit breaker de MoviesInfoService para que se abra con 4 llamadas y un 50% de fallos, y
+// desactivamos los reintentos para controlar exactamente el número de llamadas.
+@TestPropertySource(properties = {
+        "restClient.moviesInfoUrl=http://localhost:${wiremock.server.port}/v1/movieinfos",
+        "restClient.reviewsUrl=http://localhost:${wiremock.server.port}/v1/reviews",
+        "restClient.movieInfoCache.enabled=false",
+        "restClient.moviesInfo.retry.maxRetries=0",
+        "restClient.moviesInfo.circuitBreaker.slidingWindowSize=4",
+        "restClient.moviesInfo.circuitBreaker.minimumNumberOfCalls=4",
+        "restClient.moviesInfo.circuitBreaker.failureRateThreshold=50",
+        "restClient.moviesInfo.circuitBreaker.waitDurationInOpenState=1m"
+})
+// El circuit breaker se queda abierto al terminar, así que no reutilizamos este contexto en otras pruebas.
+@DirtiesContext
+class MoviesControllerCircuitBreakerIntgTest {
+    static final String MOVIES_URL = "/v1/movies";
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @BeforeEach
+    void setUp() {
+        WireMock.reset();
+    }
+
+    @Test
+    void circuitBreakerOpensAndFailsFastTest() {
+        // given
+        var movieId = "abc";
+
+        // Configuramos los stubs de Wiremocks
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withStatus(HttpStatus.INTERNAL_SERVER_ERROR.value())
+                        .withBody("MoviesInfo Service Unavailable"))
+        );
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("[]"))
+        );
+
+        // when
+        for(var i = 0; i < 4; i++) {
+            webTestClient.get()
+                    .uri(MOVIES_URL + "/{id}", movieId)
+                    .exchange()
+                    .expectStatus().isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+
+        // then
+        // Con el circuito abierto, la petición falla al instante sin llegar a MoviesInfoService.
+        webTestClient.get()
+                .uri(MOVIES_URL + "/{id}", movieId)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+
+        WireMock.verify(4, getRequestedFor(urlEqualTo("/v1/movieinfos/" + movieId)));
+
+        webTestClient.get()
+                .uri("/actuator/circuitbreakers/moviesInfo")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.state").isEqualTo("OPEN")
+                .jsonPath("$.failedCalls").isEqualTo(4);
+
+        webTestClient.get()
+                .uri("/actuator/circuitbreakers")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.reviews.state").isEqualTo("CLOSED");
+    }
+}
@@ -0,0 +1,137 @@
+package com.reactivespring.controller;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+// Levanta un servidor WireMock en un puerto aleatorio para no compartirlo con el resto de pruebas.
+@AutoConfigureWireMock(port = 0)
+// Activamos la caché de MovieInfo con un "ttl" muy corto para poder probar su revalidación.
+@TestPropertySource(properties = {
+        "restClient.moviesInfoUrl=http://localhost:${wiremock.server.port}/v1/movieinfos",
+        "restClient.reviewsUrl=http://localhost:${wiremock.server.port}/v1/reviews",
+        "restClient.movieInfoCache.enabled=true",
+        "restClient.movieInfoCache.ttl=200ms",
+        "restClient.movieInfoCache.staleWhileRevalidate=1m"
+})
+class MoviesControllerConditionalIntgTest {
+    static final String MOVIES_URL = "/v1/movies";
+    static final String MOVIE_INFO_BODY = "{\"movieInfoId\": \"%s\", \"name\": \"Batman Begins\", \"year\": 2005, "
+            + "\"cast\": [\"Christian Bale\", \"Michael Cane\"], \"releaseDate\": \"2005-06-15\", \"version\": 3}";
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        WireMock.reset();
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json"))
+        );
+    }
+
+    @Test
+    void retrieveMovieByIdNotModifiedTest() {
+        // given
+        var movieId = "abc";
+
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(String.format(MOVIE_INFO_BODY, movieId)))
+        );
+
+        var eTag = webTestClient.get()
+                .uri(MOVIES_URL + "/{id}", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class)
+                .getResponseHeaders().getETag();
+
+        assertNotNull(eTag);
+
+        // when
+        // Con el mismo "ETag" la película no ha cambiado, así que no se envía el cuerpo.
+        webTestClient.get()
+                .uri(MOVIES_URL + "/{id}", movieId)
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .exchange()
+                // then
+                .expectStatus().isNotModified()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, eTag)
+                .expectBody().isEmpty();
+    }
+
+    @Test
+    void cachedMovieInfoIsRevalidatedTest() throws InterruptedException {
+        // given
+        var movieId = "def";
+
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(String.format(MOVIE_INFO_BODY, movieId)))
+        );
+
+        // MoviesInfoService responde "304 Not Modified" a las peticiones condicionales con la versión actual.
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .withHeader(HttpHeaders.IF_NONE_MATCH, equalTo("\"3\""))
+                .atPriority(1)
+                .willReturn(aResponse().withStatus(HttpStatus.NOT_MODIFIED.value()))
+        );
+
+        webTestClient.get()
+                .uri(MOVIES_URL + "/{id}", movieId)
+                .exchange()
+                .expectStatus().isOk();
+
+        // when
+        // Una vez pasado el "ttl", la siguiente lectura lanza la revalidación en segundo plano.
+        Thread.sleep(300);
+
+        webTestClient.get()
+                .uri(MOVIES_URL + "/{id}", movieId)
+                .exchange()
+                .expectStatus().isOk();
+
+        // then
+        var revalidations = meterRegistry.get("cache.revalidations")
+                .tags("cache", "movieInfo", "result", "not_modified")
+                .counter();
+
+        for(var i = 0; i < 50 && revalidations.count() < 1; i++)
+            Thread.sleep(100);
+
+        assertEquals(1, revalidations.count());
+        verify(1, getRequestedFor(urlEqualTo("/v1/movieinfos/" + movieId))
+                .withHeader(HttpHeaders.IF_NONE_MATCH, equalTo("\"3\"")));
+
+        // La copia revalidada se sigue sirviendo desde la caché.
+        webTestClient.get()
+                .uri(MOVIES_URL + "/{id}", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.movieInfo.name").isEqualTo("Batman Begins")
+                .jsonPath("$.movieInfo.version").isEqualTo(3);
+    }
+}
@@ -0,0 +1,250 @@
+package com.reactivespring.controller;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import com.reactivespring.domain.Movie;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.time.Duration;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+// Levanta un servidor WireMock en un puerto aleatorio para no compartirlo con el resto de pruebas.
+@AutoConfigureWireMock(port = 0)
+// Configuramos un tiempo límite para las reviews mucho menor que el retraso de ReviewsService. Los reintentos de
+// ReviewsService cuentan dentro de ese tiempo límite, así que reducimos sus esperas(como mucho 10 + 20 + 40 ms) para
+// que los errores rápidos se reintenten todas las veces antes de que venza.
+@TestPropertySource(properties = {
+        "restClient.moviesInfoUrl=http://localhost:${wiremock.server.port}/v1/movieinfos",
+        "restClient.reviewsUrl=http://localhost:${wiremock.server.port}/v1/reviews",
+        "restClient.movieInfoCache.enabled=false",
+        "restClient.reviewsDeadline=300ms",
+        "restClient.reviews.retry.minBackoff=10ms",
+        "restClient.reviews.retry.maxBackoff=40ms"
+})
+class MoviesControllerDegradationIntgTest {
+    static final String MOVIES_URL = "/v1/movies";
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @BeforeEach
+    void setUp() {
+        WireMock.reset();
+    }
+
+    @Test
+    void retrieveMovieByIdWithSlowReviewsTest() {
+        // given
+        var movieId = "abc";
+
+        // Configuramos los stubs de Wiremocks
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json"))
+        );
+
+        // ReviewsService tarda 3 segundos en responder.
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")
+                        .withFixedDelay(3000))
+        );
+
+        // when
+        // La película se devuelve sin esperar a ReviewsService, sin reviews y marcada como degradada.
+        webTestClient.mutate()
+                .responseTimeout(Duration.ofSeconds(2))
+                .build()
+                .get()
+                .uri(MOVIES_URL + "/{id}", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(MovieController.REVIEWS_DEGRADED_HEADER, "true")
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    var retrievedMovie = movieEntityExchangeResult.getResponseBody();
+
+                    assert retrievedMovie != null;
+                    assert retrievedMovie.isReviewsDegraded();
+                    assert retrievedMovie.getReviewList().isEmpty();
+                    assert retrievedMovie.getMovieInfo().getName().equals("Batman Begins");
+                });
+    }
+
+    @Test
+    void retrieveMovieByIdWithError500InReviewTest() {
+        // given
+        var movieId = "abc";
+
+        // Configuramos los stubs de Wiremocks
+        // Si usamos el método "urlEqualTo", tenemos que indicar exactamente la url que debe coincidir.
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("movieinfo.json")));
+
+        // ReviewsService falla al instante en todos los intentos.
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withStatus(HttpStatus.INTERNAL_SERVER_ERROR.value())
+                        .withBody("Review Service Not Available"))
+        );
+
+        // when
+        // Si ReviewsService falla, la película se devuelve sin reviews y marcada como degradada.
+        webTestClient.get()
+                .uri(MOVIES_URL + "/{id}", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(MovieController.REVIEWS_DEGRADED_HEADER, "true")
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    var retrievedMovie = movieEntityExchangeResult.getResponseBody();
+
+                    assert retrievedMovie != null;
+                    assert retrievedMovie.isReviewsDegraded();
+                    assert retrievedMovie.getReviewList().isEmpty();
+                    assert retrievedMovie.getMovieInfo().getName().equals("Batman Begins");
+                });
+
+        // Verificamos que se haya invocado a este endpoint 4 veces ya que tenemos configurado 3 reintentos en el
+        // cliente WebClient y todos caben dentro del tiempo límite.
+        WireMock.verify(4, getRequestedFor(urlPathMatching("/v1/reviews")));
+    }
+
+    @Test
+    void retrieveMovieByIdWithRetriedReviewsTest() {
+        // given
+        var movieId = "abc";
+
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json"))
+        );
+
+        // ReviewsService falla al instante en el primer intento y responde en el segundo.
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .inScenario("reviews")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(aResponse()
+                        .withStatus(HttpStatus.INTERNAL_SERVER_ERROR.value())
+                        .withBody("Review Service Not Available"))
+                .willSetStateTo("available")
+        );
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .inScenario("reviews")
+                .whenScenarioStateIs("available")
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json"))
+        );
+
+        // when
+        // El reintento termina antes del tiempo límite, así que la película tiene todas sus reviews.
+        webTestClient.get()
+                .uri(MOVIES_URL + "/{id}", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    var retrievedMovie = movieEntityExchangeResult.getResponseBody();
+
+                    assert retrievedMovie != null;
+                    assert !retrievedMovie.isReviewsDegraded();
+                    assert retrievedMovie.getReviewList().size() == 2;
+                });
+
+        WireMock.verify(2, getRequestedFor(urlPathMatching("/v1/reviews")));
+    }
+
+    @Test
+    void retrieveMovieByIdWithSlowErrorsInReviewTest() {
+        // given
+        var movieId = "abc";
+
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json"))
+        );
+
+        // ReviewsService tarda 200 ms en fallar, así que los 4 intentos no caben en el tiempo límite.
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withStatus(HttpStatus.INTERNAL_SERVER_ERROR.value())
+                        .withBody("Review Service Not Available")
+                        .withFixedDelay(200))
+        );
+
+        // when
+        // Al vencer el tiempo límite se cancela el reintento en curso y la película se devuelve degradada.
+        webTestClient.mutate()
+                .responseTimeout(Duration.ofSeconds(2))
+                .build()
+                .get()
+                .uri(MOVIES_URL + "/{id}", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(MovieController.REVIEWS_DEGRADED_HEADER, "true")
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    var retrievedMovie = movieEntityExchangeResult.getResponseBody();
+
+                    assert retrievedMovie != null;
+                    assert retrievedMovie.isReviewsDegraded();
+                    assert retrievedMovie.getReviewList().isEmpty();
+                });
+
+        assert WireMock.findAll(getRequestedFor(urlPathMatching("/v1/reviews"))).size() < 4;
+    }
+
+    @Test
+    void retrieveMoviesByIdsWithSlowReviewsTest() {
+        // given
+        stubFor(post(urlEqualTo("/v1/movieinfos/lookup"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo-lookup.json"))
+        );
+
+        // ReviewsService tarda 3 segundos en responder.
+        stubFor(get(urlPathEqualTo("/v1/reviews/grouped"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews-grouped.json")
+                        .withFixedDelay(3000))
+        );
+
+        // when
+        // Las películas se devuelven sin esperar a ReviewsService, sin reviews y marcadas como degradadas.
+        webTestClient.mutate()
+                .responseTimeout(Duration.ofSeconds(2))
+                .build()
+                .get()
+                .uri(MOVIES_URL + "?ids={ids}", "1,2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Movie.class)
+                .consumeWith(listEntityExchangeResult -> {
+                    var retrievedMovies = listEntityExchangeResult.getResponseBody();
+
+                    assert retrievedMovies != null;
+                    assert retrievedMovies.size() == 2;
+                    assert retrievedMovies.stream().allMatch(Movie::isReviewsDegraded);
+                    assert retrievedMovies.stream().allMatch(movie -> movie.getReviewList().isEmpty());
+                });
+    }
+}
@@ -2,14 +2,22 @@ package com.reactivespring.controller;
 
 import com.github.tomakehurst.wiremock.client.WireMock;
 import com.reactivespring.domain.Movie;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.test.StepVerifier;
+
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 
@@ -17,9 +25,11 @@ import static com.github.tomakehurst.wiremock.client.WireMock.*;
 // Levanta un servidor WireMock en el puerto 8084
 @AutoConfigureWireMock(port = 8084)
 // Sobrescribimos las url de los servicios MoviesInfoService y ReviewsService para que apunten al servidor WireMock.
+// Desactivamos la caché de MovieInfo para que cada prueba llegue al servidor WireMock con sus propios stubs.
 @TestPropertySource(properties = {
         "restClient.moviesInfoUrl=http://localhost:8084/v1/movieinfos",
-        "restClient.reviewsUrl=http://localhost:8084/v1/reviews"
+        "restClient.reviewsUrl=http://localhost:8084/v1/reviews",
+        "restClient.movieInfoCache.enabled=false"
 })
 class MoviesControllerIntgTest {
     static final String MOVIES_URL = "/v1/movies";
@@ -27,6 +37,9 @@ class MoviesControllerIntgTest {
     @Autowired
     WebTestClient webTestClient;
 
+    @Autowired
+    MeterRegistry meterRegistry;
+
     @BeforeEach
     void setUp() {
         WireMock.reset();
@@ -48,11 +61,12 @@ class MoviesControllerIntgTest {
 
         // Si usamos el método "urlPathEqualTo", tenemos que indicar una url que acepte Query Params
         // (Por ejemplo: "/v1/reviews?movie-info-id=2").
+        // ReviewsService devuelve todas las reviews en streaming, una review por línea.
         stubFor(get(urlPathEqualTo("/v1/reviews"))
                 .willReturn(aResponse()
-                        .withHeader("Content-Type", "application/json")
+                        .withHeader("Content-Type", "application/x-ndjson")
                         // Por defecto, automáticamente busca el archivo en el directorio "__files" dentro del directorio "resources"
-                        .withBodyFile("reviews.json"))
+                        .withBodyFile("reviews.ndjson"))
         );
 
         // when
@@ -60,6 +74,7 @@ class MoviesControllerIntgTest {
                 .uri(MOVIES_URL + "/{id}", movieId)
                 .exchange()
                 .expectStatus().isOk()
+                .expectHeader().valueEquals(MovieController.REVIEWS_DEGRADED_HEADER, "false")
                 .expectBody(Movie.class)
                 .consumeWith(movieEntityExchangeResult -> {
                     var retrievedMovie = movieEntityExchangeResult.getResponseBody();
@@ -67,9 +82,16 @@ class MoviesControllerIntgTest {
                     assert retrievedMovie != null;
                     assert retrievedMovie.getReviewList() != null;
                     assert retrievedMovie.getMovieInfo() != null;
+                    assert !retrievedMovie.isReviewsDegraded();
                     assert retrievedMovie.getReviewList().size() == 2;
                     assert retrievedMovie.getMovieInfo().getName().equals("Batman Begins");
                 });
+
+        // Cada servicio tiene su propio pool de conexiones y publica sus métricas con el nombre del servicio.
+        assert meterRegistry.find("reactor.netty.connection.provider.total.connections")
+                .tag("name", "moviesInfo").gauge() != null;
+        assert meterRegistry.find("reactor.netty.connection.provider.total.connections")
+                .tag("name", "reviews").gauge() != null;
     }
 
     @Test
@@ -178,40 +200,168 @@ class MoviesControllerIntgTest {
         // Verificamos que se haya invocado a este endpoint 4 veces ya que tenemos configurado 3 reintentos en el
         // cliente WebClient.
         WireMock.verify(4, getRequestedFor(urlEqualTo("/v1/movieinfos/" + movieId)));
+
+        // La latencia de cada intento queda registrada con su número de intento.
+        assert meterRegistry.find("client.requests")
+                .tags("downstream", "moviesInfo", "status", "500", "attempt", "4")
+                .timer() != null;
     }
 
     @Test
-    void retrieveMovieByIdWithError500InReviewTest() {
+    void retrieveMoviesByIdsTest() {
+        // Configuramos los stubs de Wiremocks
+        // Con una única llamada a cada servicio se recuperan todas las películas y todas sus reviews.
+        stubFor(post(urlEqualTo("/v1/movieinfos/lookup"))
+                .withRequestBody(equalToJson("{\"ids\": [\"1\", \"2\"]}"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo-lookup.json"))
+        );
+
+        // ReviewsService devuelve las reviews ya agrupadas por película.
+        stubFor(get(urlEqualTo("/v1/reviews/grouped?movie-info-id=1&movie-info-id=2"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews-grouped.json"))
+        );
+
+        // when
+        webTestClient.get()
+                .uri(MOVIES_URL + "?ids={ids}", "1,2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Movie.class)
+                .consumeWith(listEntityExchangeResult -> {
+                    var retrievedMovies = listEntityExchangeResult.getResponseBody();
+
+                    assert retrievedMovies != null;
+                    assert retrievedMovies.size() == 2;
+                    assert retrievedMovies.get(0).getMovieInfo().getName().equals("Batman Begins");
+                    assert retrievedMovies.get(0).getReviewList().size() == 2;
+                    assert retrievedMovies.get(1).getMovieInfo().getName().equals("The Dark Knight");
+                    assert retrievedMovies.get(1).getReviewList().isEmpty();
+                });
+
+        WireMock.verify(1, postRequestedFor(urlEqualTo("/v1/movieinfos/lookup")));
+        WireMock.verify(1, getRequestedFor(urlPathEqualTo("/v1/reviews/grouped")));
+    }
+
+    @Test
+    void retrieveMoviesByIdsWithMissingIdsTest() {
+        // Configuramos los stubs de Wiremocks
+        // Los ids que no existen en MoviesInfoService se devuelven aparte y no aparecen en la respuesta.
+        stubFor(post(urlEqualTo("/v1/movieinfos/lookup"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("{\"movieInfos\": [{\"movieInfoId\": \"1\", \"name\": \"Batman Begins\", "
+                                + "\"year\": 2005, \"cast\": [\"Christian Bale\"]}], \"missingIds\": [\"3\"]}"))
+        );
+
+        stubFor(get(urlPathEqualTo("/v1/reviews/grouped"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews-grouped.json"))
+        );
+
+        // when
+        webTestClient.get()
+                .uri(MOVIES_URL + "?ids={ids}", "1,3")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Movie.class)
+                .consumeWith(listEntityExchangeResult -> {
+                    var retrievedMovies = listEntityExchangeResult.getResponseBody();
+
+                    assert retrievedMovies != null;
+                    assert retrievedMovies.size() == 1;
+                    assert retrievedMovies.get(0).getMovieInfo().getName().equals("Batman Begins");
+                });
+    }
+
+    @Test
+    void retrieveMoviesByIdsWithTooManyIdsTest() {
+        // given
+        var ids = IntStream.rangeClosed(1, 51)
+                .mapToObj(String::valueOf)
+                .collect(Collectors.joining(","));
+
+        // when
+        webTestClient.get()
+                .uri(MOVIES_URL + "?ids={ids}", ids)
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("The maximum number of ids per request is 50");
+
+        WireMock.verify(0, postRequestedFor(urlEqualTo("/v1/movieinfos/lookup")));
+    }
+
+    @Test
+    void streamMovieByIdTest() {
         // given
         var movieId = "abc";
 
         // Configuramos los stubs de Wiremocks
-        // Si usamos el método "urlEqualTo", tenemos que indicar exactamente la url que debe coincidir.
         stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
-                        .willReturn(aResponse()
-                                .withHeader("Content-Type", "application/json")
-                                // Por defecto, automáticamente busca el archivo en el directorio "__files" dentro del directorio "resources"
-                                .withBodyFile("movieinfo.json")));
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json"))
+        );
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json"))
+        );
+
+        // when
+        var fluxOfEvents = webTestClient.get()
+                .uri(MOVIES_URL + "/{id}", movieId)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<String>>() {})
+                .getResponseBody();
 
+        // then
+        // Primero se emite el MovieInfo y después cada una de las reviews.
+        StepVerifier.create(fluxOfEvents)
+                .assertNext(event -> {
+                    assert "movieInfo".equals(event.event());
+                    assert event.data() != null && event.data().contains("Batman Begins");
+                })
+                .assertNext(event -> {
+                    assert "review".equals(event.event());
+                })
+                .assertNext(event -> {
+                    assert "review".equals(event.event());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void streamMovieByIdWithMovieInfoNotFoundTest() {
+        // given
+        var movieId = "abc";
 
         // Configuramos los stubs de Wiremocks
-        // Si usamos el método "urlPathEqualTo", tenemos que indicar una url que acepte Query Params
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withStatus(HttpStatus.NOT_FOUND.value()))
+        );
+
         stubFor(get(urlPathEqualTo("/v1/reviews"))
                 .willReturn(aResponse()
-                        .withStatus(HttpStatus.INTERNAL_SERVER_ERROR.value())
-                        .withBody("Review Service Not Available"))
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json"))
         );
 
         // when
+        // Como todavía no se ha emitido ningún evento, el error se devuelve con su código de estado.
         webTestClient.get()
                 .uri(MOVIES_URL + "/{id}", movieId)
+                .accept(MediaType.TEXT_EVENT_STREAM)
                 .exchange()
-                .expectStatus().is5xxServerError()
-                .expectBody(String.class)
-                .isEqualTo("Server Exception in ReviewService: Review Service Not Available");
-
-        // Verificamos que se haya invocado a este endpoint 4 veces ya que tenemos configurado 3 reintentos en el
-        // cliente WebClient.
-        WireMock.verify(4, getRequestedFor(urlPathMatching("/v1/reviews")));
+                .expectStatus().isNotFound();
     }
 }
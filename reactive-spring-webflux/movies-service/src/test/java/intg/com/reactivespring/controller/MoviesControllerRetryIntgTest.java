@@ -0,0 +1,81 @@
+package com.reactivespring.controller;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+// Levanta un servidor WireMock en un puerto aleatorio para no compartirlo con el resto de pruebas.
+@AutoConfigureWireMock(port = 0)
+// Configuramos un presupuesto de reintentos del 10% de las peticiones, con un mínimo de 5 reintentos por ventana, y
+// unos tiempos de espera entre reintentos pequeños para que la prueba sea rápida. El circuit breaker necesita más
+// llamadas de las que hace la prueba para abrirse, así que todas las peticiones llegan a MoviesInfoService.
+@TestPropertySource(properties = {
+        "restClient.moviesInfoUrl=http://localhost:${wiremock.server.port}/v1/movieinfos",
+        "restClient.reviewsUrl=http://localhost:${wiremock.server.port}/v1/reviews",
+        "restClient.movieInfoCache.enabled=false",
+        "restClient.moviesInfo.retry.maxRetries=3",
+        "restClient.moviesInfo.retry.minBackoff=5ms",
+        "restClient.moviesInfo.retry.maxBackoff=20ms",
+        "restClient.moviesInfo.retry.budgetRatio=0.1",
+        "restClient.moviesInfo.retry.minRetriesPerWindow=5",
+        "restClient.moviesInfo.retry.budgetWindow=1m",
+        "restClient.moviesInfo.circuitBreaker.slidingWindowSize=1000",
+        "restClient.moviesInfo.circuitBreaker.minimumNumberOfCalls=1000"
+})
+class MoviesControllerRetryIntgTest {
+    static final String MOVIES_URL = "/v1/movies";
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @BeforeEach
+    void setUp() {
+        WireMock.reset();
+    }
+
+    @Test
+    void retriesAreBoundedUnderSustainedServerErrorsTest() {
+        // given
+        var requests = 40;
+
+        // Configuramos los stubs de Wiremocks
+        stubFor(get(urlPathMatching("/v1/movieinfos/.*"))
+                .willReturn(aResponse()
+                        .withStatus(HttpStatus.INTERNAL_SERVER_ERROR.value())
+                        .withBody("MoviesInfo Service Unavailable"))
+        );
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("[]"))
+        );
+
+        // when
+        for(var i = 0; i < requests; i++) {
+            webTestClient.get()
+                    .uri(MOVIES_URL + "/{id}", "movie" + i)
+                    .exchange()
+                    .expectStatus().is5xxServerError();
+        }
+
+        // then
+        // Sin presupuesto de reintentos se realizarían 4 llamadas por petición(160 en total). Con el presupuesto, el
+        // número de reintentos no supera el mayor valor entre 5 y el 10% de las peticiones.
+        var downstreamCalls = WireMock.findAll(getRequestedFor(urlPathMatching("/v1/movieinfos/.*"))).size();
+
+        assertTrue(downstreamCalls >= requests);
+        assertTrue(downstreamCalls <= requests + Math.max(5, requests / 10),
+                "Unexpected number of calls to MoviesInfoService: " + downstreamCalls);
+    }
+}
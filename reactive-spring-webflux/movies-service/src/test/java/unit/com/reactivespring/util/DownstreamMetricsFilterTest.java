@@ -0,0 +1,69 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DownstreamMetricsFilterTest {
+
+    @Test
+    void requestsAreTimedByStatusOutcomeAndAttemptTest() {
+        // given
+        var meterRegistry = new SimpleMeterRegistry();
+        var metricsFilter = new DownstreamMetricsFilter("test", meterRegistry);
+        var request = ClientRequest.create(HttpMethod.GET, URI.create("http://localhost/v1/movieinfos/1"))
+                .attribute(DownstreamMetricsFilter.ATTEMPT_ATTRIBUTE, new AtomicInteger())
+                .build();
+        var responses = new AtomicInteger();
+
+        // La primera respuesta es un error 500 y la segunda es correcta.
+        var monoOfResponse = metricsFilter.filter(request, clientRequest -> Mono.just(ClientResponse
+                .create(responses.incrementAndGet() == 1 ? HttpStatus.INTERNAL_SERVER_ERROR : HttpStatus.OK)
+                .build()));
+
+        // when
+        StepVerifier.create(monoOfResponse.then(monoOfResponse))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        // then
+        assertEquals(1, meterRegistry.get("client.requests")
+                .tags("downstream", "test", "status", "500", "outcome", "SERVER_ERROR", "attempt", "1")
+                .timer().count());
+        assertEquals(1, meterRegistry.get("client.requests")
+                .tags("downstream", "test", "status", "200", "outcome", "SUCCESS", "attempt", "2")
+                .timer().count());
+    }
+
+    @Test
+    void cancelledRequestsAreTimedTest() {
+        // given
+        var meterRegistry = new SimpleMeterRegistry();
+        var metricsFilter = new DownstreamMetricsFilter("test", meterRegistry);
+        var request = ClientRequest.create(HttpMethod.GET, URI.create("http://localhost/v1/movieinfos/1")).build();
+
+        // when
+        var monoOfResponse = metricsFilter.filter(request, clientRequest -> Mono.never())
+                .timeout(Duration.ofMillis(10));
+
+        // then
+        StepVerifier.create(monoOfResponse)
+                .expectError()
+                .verify();
+
+        assertEquals(1, meterRegistry.get("client.requests")
+                .tags("downstream", "test", "outcome", "CANCELLED", "attempt", "1")
+                .timer().count());
+    }
+}
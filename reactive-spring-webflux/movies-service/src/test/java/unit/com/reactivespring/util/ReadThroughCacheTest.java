@@ -0,0 +1,146 @@
+package com.reactivespring.util;
+
+import com.reactivespring.config.RestClientProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReadThroughCacheTest {
+    SimpleMeterRegistry meterRegistry;
+    AtomicLong nanoTime;
+    AtomicInteger loads;
+    RestClientProperties.Cache properties;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        nanoTime = new AtomicLong();
+        loads = new AtomicInteger();
+
+        properties = new RestClientProperties.Cache();
+        properties.setTtl(Duration.ofSeconds(10));
+        properties.setStaleWhileRevalidate(Duration.ofSeconds(5));
+        properties.setMaximumSize(2);
+    }
+
+    // El valor cargado incluye el número de carga para poder distinguir las actualizaciones.
+    ReadThroughCache<String> createCache() {
+        // Usamos un reloj controlado por la prueba y ejecutamos las actualizaciones en el mismo hilo.
+        return new ReadThroughCache<>("test", properties, key -> Mono.fromSupplier(() -> key + "-" + loads.incrementAndGet()),
+                null, String::length, meterRegistry, nanoTime::get, Runnable::run);
+    }
+
+    void advance(Duration duration) {
+        nanoTime.addAndGet(duration.toNanos());
+    }
+
+    @Test
+    void hitAfterMissTest() {
+        // given
+        var cache = createCache();
+
+        // when
+        StepVerifier.create(cache.get("abc")).expectNext("abc-1").verifyComplete();
+        StepVerifier.create(cache.get("abc")).expectNext("abc-1").verifyComplete();
+
+        // then
+        assertEquals(1, loads.get());
+        assertEquals(1, meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count());
+        assertEquals(1, meterRegistry.get("cache.gets").tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void staleWhileRevalidateTest() {
+        // given
+        var cache = createCache();
+        cache.get("abc").block();
+
+        // when
+        advance(Duration.ofSeconds(12));
+
+        // then
+        // Dentro de la ventana se devuelve el valor caducado y se lanza una única actualización en segundo plano.
+        StepVerifier.create(cache.get("abc")).expectNext("abc-1").verifyComplete();
+        StepVerifier.create(cache.get("abc")).expectNext("abc-2").verifyComplete();
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void expiredAfterStaleWindowTest() {
+        // given
+        var cache = createCache();
+        cache.get("abc").block();
+
+        // when
+        advance(Duration.ofSeconds(16));
+
+        // then
+        StepVerifier.create(cache.get("abc")).expectNext("abc-2").verifyComplete();
+        assertEquals(2, meterRegistry.get("cache.gets").tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void revalidationReceivesCachedValueTest() {
+        // given
+        var revalidations = new AtomicInteger();
+        // La revalidación devuelve el mismo valor, como si el servicio respondiese "304 Not Modified".
+        var cache = new ReadThroughCache<String>("test", properties,
+                key -> Mono.fromSupplier(() -> key + "-" + loads.incrementAndGet()),
+                (key, cachedValue) -> Mono.fromSupplier(() -> {
+                    revalidations.incrementAndGet();
+                    return cachedValue;
+                }),
+                String::length, meterRegistry, nanoTime::get, Runnable::run);
+        cache.get("abc").block();
+
+        // when
+        advance(Duration.ofSeconds(12));
+        cache.get("abc").block();
+
+        // then
+        // El valor revalidado vuelve a ser válido durante todo el "ttl" sin ninguna carga completa.
+        advance(Duration.ofSeconds(8));
+        StepVerifier.create(cache.get("abc")).expectNext("abc-1").verifyComplete();
+        assertEquals(1, loads.get());
+        assertEquals(1, revalidations.get());
+    }
+
+    @Test
+    void failedLoadIsNotCachedTest() {
+        // given
+        var attempts = new AtomicInteger();
+        var cache = new ReadThroughCache<String>("test", properties,
+                key -> attempts.incrementAndGet() == 1
+                        ? Mono.error(new RuntimeException("MoviesInfo Service Unavailable"))
+                        : Mono.just(key),
+                null, String::length, meterRegistry, nanoTime::get, Runnable::run);
+
+        // then
+        StepVerifier.create(cache.get("abc")).expectErrorMessage("MoviesInfo Service Unavailable").verify();
+        StepVerifier.create(cache.get("abc")).expectNext("abc").verifyComplete();
+    }
+
+    @Test
+    void evictionTest() {
+        // given
+        var cache = createCache();
+
+        // when
+        cache.get("abc").block();
+        cache.get("def").block();
+        cache.get("ghi").block();
+        cache.cleanUp();
+
+        // then
+        assertEquals(1, meterRegistry.get("cache.evictions").functionCounter().count());
+        assertEquals(2, meterRegistry.get("cache.size").gauge().value());
+    }
+}
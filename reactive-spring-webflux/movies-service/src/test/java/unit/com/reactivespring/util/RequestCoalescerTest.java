@@ -0,0 +1,103 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RequestCoalescerTest {
+
+    @Test
+    void concurrentCallersShareOneCallTest() {
+        // given
+        var meterRegistry = new SimpleMeterRegistry();
+        var requestCoalescer = new RequestCoalescer<String>("test", meterRegistry);
+        var calls = new AtomicInteger();
+        Sinks.One<String> downstream = Sinks.one();
+
+        // when
+        var monoOfResult1 = requestCoalescer.execute("abc", key -> {
+            calls.incrementAndGet();
+            return downstream.asMono();
+        });
+        var monoOfResult2 = requestCoalescer.execute("abc", key -> {
+            calls.incrementAndGet();
+            return downstream.asMono();
+        });
+
+        // then
+        StepVerifier.create(Mono.zip(monoOfResult1, monoOfResult2))
+                .then(() -> downstream.tryEmitValue("Batman Begins"))
+                .assertNext(tuple -> {
+                    assertEquals("Batman Begins", tuple.getT1());
+                    assertEquals("Batman Begins", tuple.getT2());
+                })
+                .verifyComplete();
+
+        assertEquals(1, calls.get());
+        assertEquals(0.5, requestCoalescer.getCoalescingRatio());
+        assertEquals(2, meterRegistry.get("coalescer.requests").counter().count());
+        assertEquals(1, meterRegistry.get("coalescer.coalesced").counter().count());
+    }
+
+    @Test
+    void concurrentCallersShareTheSameErrorTest() {
+        // given
+        var requestCoalescer = new RequestCoalescer<String>("test", new SimpleMeterRegistry());
+        Sinks.One<String> downstream = Sinks.one();
+
+        // when
+        var monoOfResult1 = requestCoalescer.execute("abc", key -> downstream.asMono());
+        var monoOfResult2 = requestCoalescer.execute("abc", key -> downstream.asMono());
+
+        // then
+        StepVerifier.create(Mono.zipDelayError(monoOfResult1.onErrorReturn("error1"),
+                        monoOfResult2.onErrorReturn("error2")))
+                .then(() -> downstream.tryEmitError(new RuntimeException("MoviesInfo Service Unavailable")))
+                .assertNext(tuple -> {
+                    assertEquals("error1", tuple.getT1());
+                    assertEquals("error2", tuple.getT2());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void completedCallIsNotSharedTest() {
+        // given
+        var requestCoalescer = new RequestCoalescer<Integer>("test", new SimpleMeterRegistry());
+        var calls = new AtomicInteger();
+
+        // when
+        var firstResult = requestCoalescer.execute("abc", key -> Mono.fromSupplier(calls::incrementAndGet)).block();
+        var secondResult = requestCoalescer.execute("abc", key -> Mono.fromSupplier(calls::incrementAndGet)).block();
+
+        // then
+        // Una vez terminada la primera llamada, la entrada se elimina y la siguiente petición lanza una llamada nueva.
+        assertEquals(1, firstResult);
+        assertEquals(2, secondResult);
+        assertEquals(0, requestCoalescer.getCoalescingRatio());
+    }
+
+    @Test
+    void callIsReleasedBeforeResultIsDeliveredTest() {
+        // given
+        var requestCoalescer = new RequestCoalescer<Integer>("test", new SimpleMeterRegistry());
+        var calls = new AtomicInteger();
+
+        // when
+        // La segunda petición se lanza al recibir el resultado de la primera, cuando la primera llamada ya ha terminado.
+        var monoOfResults = requestCoalescer.execute("abc", key -> Mono.fromSupplier(calls::incrementAndGet))
+                .flatMap(firstResult -> requestCoalescer.execute("abc",
+                        key -> Mono.fromSupplier(calls::incrementAndGet)));
+
+        // then
+        StepVerifier.create(monoOfResults)
+                .expectNext(2)
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,183 @@
+package com.reactivespring.util;
+
+import com.reactivespring.config.RestClientProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestHedgerTest {
+    private SimpleMeterRegistry meterRegistry;
+    private RequestHedger requestHedger;
+
+    @BeforeEach
+    void setUp() {
+        var properties = new RestClientProperties.Hedge();
+        properties.setEnabled(true);
+        properties.setMinDelay(Duration.ofMillis(20));
+        properties.setMinSamples(10);
+
+        meterRegistry = new SimpleMeterRegistry();
+        requestHedger = new RequestHedger("test", properties, meterRegistry);
+    }
+
+    @Test
+    void noHedgeWithoutEnoughSamplesTest() {
+        // given
+        var calls = new AtomicInteger();
+        var call = Mono.defer(() -> {
+            calls.incrementAndGet();
+            return Mono.delay(Duration.ofMillis(100)).thenReturn("primary");
+        });
+
+        // when
+        var monoOfResult = requestHedger.execute(call);
+
+        // then
+        StepVerifier.create(monoOfResult)
+                .expectNext("primary")
+                .verifyComplete();
+
+        assertEquals(1, calls.get());
+        assertEquals(0, meterRegistry.get("client.hedge.fired").counter().count());
+    }
+
+    @Test
+    void slowRequestIsHedgedAndLoserIsCancelledTest() {
+        // given
+        warmUp();
+
+        var calls = new AtomicInteger();
+        var primaryCancelled = new AtomicBoolean();
+        // La primera petición tarda mucho más que el percentil y la segunda responde al instante.
+        var call = Mono.defer(() -> calls.incrementAndGet() == 1
+                ? Mono.delay(Duration.ofSeconds(5)).thenReturn("primary")
+                        .doOnCancel(() -> primaryCancelled.set(true))
+                : Mono.just("hedge"));
+
+        // when
+        var monoOfResult = requestHedger.execute(call);
+
+        // then
+        StepVerifier.create(monoOfResult)
+                .expectNext("hedge")
+                .verifyComplete();
+
+        assertEquals(2, calls.get());
+        assertTrue(primaryCancelled.get());
+        assertEquals(1, meterRegistry.get("client.hedge.fired").counter().count());
+        assertEquals(1, meterRegistry.get("client.hedge.wins").counter().count());
+    }
+
+    @Test
+    void fastRequestIsNotHedgedTest() {
+        // given
+        warmUp();
+
+        var calls = new AtomicInteger();
+        var call = Mono.defer(() -> {
+            calls.incrementAndGet();
+            return Mono.just("primary");
+        });
+
+        // when
+        var monoOfResult = requestHedger.execute(call);
+
+        // then
+        StepVerifier.create(monoOfResult)
+                .expectNext("primary")
+                .verifyComplete();
+
+        assertEquals(1, calls.get());
+        assertEquals(0, meterRegistry.get("client.hedge.fired").counter().count());
+    }
+
+    @Test
+    void primaryErrorIsNotHedgedTest() {
+        // given
+        warmUp();
+
+        var calls = new AtomicInteger();
+        var call = Mono.defer(() -> {
+            calls.incrementAndGet();
+            return Mono.<String>error(new IllegalStateException("Not Found"));
+        });
+
+        // when
+        var monoOfResult = requestHedger.execute(call);
+
+        // then
+        StepVerifier.create(monoOfResult)
+                .expectError(IllegalStateException.class)
+                .verify();
+
+        assertEquals(1, calls.get());
+        assertEquals(0, meterRegistry.get("client.hedge.fired").counter().count());
+    }
+
+    @Test
+    void hedgeErrorDoesNotCancelPrimaryTest() {
+        // given
+        warmUp();
+
+        var calls = new AtomicInteger();
+        var primaryCancelled = new AtomicBoolean();
+        // La segunda petición falla al instante(por ejemplo, una instancia que rechaza la conexión) y la original
+        // responde más tarde.
+        var call = Mono.defer(() -> calls.incrementAndGet() == 1
+                ? Mono.delay(Duration.ofMillis(200)).thenReturn("primary")
+                        .doOnCancel(() -> primaryCancelled.set(true))
+                : Mono.<String>error(new IllegalStateException("Connection refused")));
+
+        // when
+        var monoOfResult = requestHedger.execute(call);
+
+        // then
+        StepVerifier.create(monoOfResult)
+                .expectNext("primary")
+                .verifyComplete();
+
+        assertEquals(2, calls.get());
+        assertFalse(primaryCancelled.get());
+        assertEquals(1, meterRegistry.get("client.hedge.fired").counter().count());
+        assertEquals(0, meterRegistry.get("client.hedge.wins").counter().count());
+    }
+
+    @Test
+    void bothRequestsFailTest() {
+        // given
+        warmUp();
+
+        var calls = new AtomicInteger();
+        // La original falla después de lanzar la segunda, que también falla.
+        var call = Mono.defer(() -> calls.incrementAndGet() == 1
+                ? Mono.delay(Duration.ofMillis(200)).then(Mono.<String>error(new IllegalStateException("primary")))
+                : Mono.<String>error(new IllegalArgumentException("hedge")));
+
+        // when
+        var monoOfResult = requestHedger.execute(call);
+
+        // then
+        // Se devuelve el error de la petición original.
+        StepVerifier.create(monoOfResult)
+                .expectErrorMatches(ex -> ex instanceof IllegalStateException && ex.getMessage().equals("primary"))
+                .verify();
+
+        assertEquals(2, calls.get());
+    }
+
+    // Registra suficientes latencias(casi nulas) para que el retardo de la segunda petición sea el mínimo configurado.
+    private void warmUp() {
+        for(var i = 0; i < 10; i++)
+            requestHedger.execute(Mono.just("warm up")).block();
+    }
+}
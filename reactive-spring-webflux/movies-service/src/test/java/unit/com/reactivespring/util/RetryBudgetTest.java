@@ -0,0 +1,97 @@
+package com.reactivespring.util;
+
+import com.reactivespring.config.RestClientProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryBudgetTest {
+
+    @Test
+    void retriesAreLimitedByBudgetTest() {
+        // given
+        var properties = new RestClientProperties.Retry();
+        properties.setBudgetRatio(0.1);
+        properties.setMinRetriesPerWindow(2);
+        properties.setBudgetWindow(Duration.ofSeconds(10));
+
+        var nanoTime = new AtomicLong();
+        var meterRegistry = new SimpleMeterRegistry();
+        var retryBudget = new RetryBudget("test", properties, meterRegistry, nanoTime::get);
+
+        // when
+        for(var i = 0; i < 50; i++)
+            retryBudget.recordRequest();
+
+        var allowedRetries = 0;
+        for(var i = 0; i < 50; i++) {
+            if(retryBudget.tryAcquireRetry())
+                allowedRetries++;
+        }
+
+        // then
+        // Con 50 peticiones y un 10% de presupuesto, solo se permiten 5 reintentos.
+        assertEquals(5, allowedRetries);
+        assertEquals(45, meterRegistry.get("client.retries").tag("result", "rejected").counter().count());
+    }
+
+    @Test
+    void minRetriesPerWindowTest() {
+        // given
+        var properties = new RestClientProperties.Retry();
+        properties.setBudgetRatio(0.1);
+        properties.setMinRetriesPerWindow(2);
+
+        var retryBudget = new RetryBudget("test", properties, new SimpleMeterRegistry(), () -> 0L);
+
+        // when
+        retryBudget.recordRequest();
+
+        // then
+        assertTrue(retryBudget.tryAcquireRetry());
+        assertTrue(retryBudget.tryAcquireRetry());
+        assertFalse(retryBudget.tryAcquireRetry());
+    }
+
+    @Test
+    void budgetIsRestoredWhenWindowSlidesTest() {
+        // given
+        var properties = new RestClientProperties.Retry();
+        properties.setBudgetRatio(0.1);
+        properties.setMinRetriesPerWindow(1);
+        properties.setBudgetWindow(Duration.ofSeconds(10));
+
+        var nanoTime = new AtomicLong();
+        var retryBudget = new RetryBudget("test", properties, new SimpleMeterRegistry(), nanoTime::get);
+
+        retryBudget.recordRequest();
+        assertTrue(retryBudget.tryAcquireRetry());
+        assertFalse(retryBudget.tryAcquireRetry());
+
+        // when
+        nanoTime.addAndGet(Duration.ofSeconds(11).toNanos());
+
+        // then
+        assertTrue(retryBudget.tryAcquireRetry());
+    }
+
+    @Test
+    void backoffIsBoundedTest() {
+        // given
+        var properties = new RestClientProperties.Retry();
+        properties.setMinBackoff(Duration.ofMillis(100));
+        properties.setMaxBackoff(Duration.ofMillis(500));
+
+        // then
+        for(var retry = 0; retry < 100; retry++) {
+            var backoff = RetryUtil.getBackoff(properties, retry);
+
+            assertFalse(backoff.isNegative());
+            assertTrue(backoff.compareTo(Duration.ofMillis(Math.min(500, 100L << Math.min(retry, 30)))) <= 0);
+        }
+    }
+}